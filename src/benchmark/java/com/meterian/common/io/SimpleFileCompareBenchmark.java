@@ -0,0 +1,86 @@
+package com.meterian.common.io;
+
+import com.meterian.common.io.SimpleFileCompare.Diff;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Comparison of a large manifest with its fixed version, where a few dependency versions were upgraded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SimpleFileCompareBenchmark {
+
+    @Param({"1000", "20000"})
+    public int dependencies;
+
+    private File source;
+    private File fixed;
+
+    @Setup
+    public void setup() throws IOException {
+        List<String> original = new ArrayList<>();
+        List<String> upgraded = new ArrayList<>();
+        original.add("<project>");
+        original.add("    <dependencies>");
+        for (int i = 0; i < dependencies; i++) {
+            original.addAll(dependency(i, "1.0." + i));
+        }
+        original.add("    </dependencies>");
+        original.add("</project>");
+
+        upgraded.addAll(original);
+        for (int i = 0; i < dependencies; i += dependencies / 10) {
+            int versionLine = 2 + i * 5 + 3;
+            upgraded.set(versionLine, "            <version>2.0." + i + "</version>");
+        }
+
+        source = File.createTempFile("pom-", ".xml");
+        fixed = File.createTempFile("pom-", ".fix.xml");
+        Files.write(source.toPath(), original, StandardCharsets.UTF_8);
+        Files.write(fixed.toPath(), upgraded, StandardCharsets.UTF_8);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(source.toPath());
+        Files.deleteIfExists(fixed.toPath());
+    }
+
+    @Benchmark
+    public List<Diff> compare() throws IOException {
+        return new SimpleFileCompare(source, fixed).compare();
+    }
+
+    private List<String> dependency(int index, String version) {
+        List<String> lines = new ArrayList<>();
+        lines.add("        <dependency>");
+        lines.add("            <groupId>org.example.group" + index + "</groupId>");
+        lines.add("            <artifactId>artifact-" + index + "</artifactId>");
+        lines.add("            <version>" + version + "</version>");
+        lines.add("        </dependency>");
+        return lines;
+    }
+}
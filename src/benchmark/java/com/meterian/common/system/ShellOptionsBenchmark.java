@@ -0,0 +1,60 @@
+package com.meterian.common.system;
+
+import com.meterian.common.system.Shell.Options;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Construction of the client process options, applying only the overrides as Meterian does, against
+ * copying the whole pipeline environment.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ShellOptionsBenchmark {
+
+    private Map<String, String> pipelineEnvironment;
+    private Map<String, String> systemEnvironment;
+
+    @Setup
+    public void setup() {
+        pipelineEnvironment = new HashMap<>();
+        for (int i = 0; i < 40; i++)
+            pipelineEnvironment.put("BITBUCKET_VARIABLE_" + i, "value-of-variable-" + i);
+
+        systemEnvironment = new OS().getenv();
+    }
+
+    @Benchmark
+    public Options overridesOnly() {
+        return new Options()
+                .withOutputGobbler(Shell.NO_GOBBLER)
+                .withErrorGobbler(Shell.NO_GOBBLER)
+                .withEnvironmentVariable("METERIAN_API_TOKEN", "token");
+    }
+
+    @Benchmark
+    public Options wholeEnvironment() {
+        return new Options()
+                .withOutputGobbler(Shell.NO_GOBBLER)
+                .withErrorGobbler(Shell.NO_GOBBLER)
+                .withEnvironmentVariables(pipelineEnvironment)
+                .withEnvironmentVariable("METERIAN_API_TOKEN", "token")
+                .withEnvironmentVariables(systemEnvironment);
+    }
+}
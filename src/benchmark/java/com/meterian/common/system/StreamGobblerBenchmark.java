@@ -0,0 +1,70 @@
+package com.meterian.common.system;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gobbling of the client output with the line reader and with the NIO engine, handing each
+ * line to a gobbler that only looks at its length, as most lines are only counted and echoed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class StreamGobblerBenchmark {
+
+    @Param({"1000", "10000"})
+    public int lines;
+
+    private byte[] output;
+
+    @Setup
+    public void setup() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines; i++)
+            text.append("- dependency org.module").append(i).append(":module").append(i).append(":1.").append(i)
+                .append(" (compile), no known vulnerabilities\n");
+        output = text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void lineReader(Blackhole blackhole) {
+        new StreamGobbler(new ByteArrayInputStream(output), "STDOUT", gobbler(blackhole), new CountDownLatch(1)).run();
+    }
+
+    @Benchmark
+    public void nio(Blackhole blackhole) {
+        new NioStreamGobbler(new ByteArrayInputStream(output), "STDOUT", gobbler(blackhole), new CountDownLatch(1)).run();
+    }
+
+    private LineGobbler gobbler(Blackhole blackhole) {
+        return new LineGobbler() {
+            @Override
+            public void process(String type, String line) {
+                blackhole.consume(line.length());
+            }
+
+            @Override
+            public void process(String type, CharSequence line) {
+                blackhole.consume(line.length());
+            }
+        };
+    }
+}
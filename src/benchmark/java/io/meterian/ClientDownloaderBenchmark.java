@@ -0,0 +1,113 @@
+package io.meterian;
+
+import io.meterian.bitbucket.pipelines.BitbucketConfiguration;
+import io.meterian.test_management.MeterianStandInServer;
+import org.apache.commons.io.FileUtils;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading of the client against a local stand-in of the Meterian site: from the cache within
+ * the TTL, revalidated with its ETag, and downloaded from scratch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ClientDownloaderBenchmark {
+
+    @Param({"4", "32"})
+    public int jarSizeInMegabytes;
+
+    private MeterianStandInServer meterian;
+    private CloseableHttpClient httpClient;
+    private MeterianConsole console;
+    private File cacheFolder;
+
+    private BitbucketConfiguration withinTtl;
+    private BitbucketConfiguration revalidating;
+
+    @Setup
+    public void setup() throws IOException {
+        byte[] jar = new byte[jarSizeInMegabytes * 1024 * 1024];
+        new Random(42).nextBytes(jar);
+        meterian = new MeterianStandInServer().withJar(jar);
+
+        cacheFolder = Files.createTempDirectory("meterian-cache-").toFile();
+        withinTtl = configuration("3600");
+        revalidating = configuration("0");
+
+        httpClient = new HttpClientFactory().newHttpClient(revalidating);
+        console = new MeterianConsole(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }));
+    }
+
+    @Setup(Level.Iteration)
+    public void warmCache() throws IOException {
+        load(revalidating);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        httpClient.close();
+        meterian.close();
+        FileUtils.deleteDirectory(cacheFolder);
+    }
+
+    @Benchmark
+    public File cachedWithinTtl() throws IOException {
+        return load(withinTtl);
+    }
+
+    @Benchmark
+    public File revalidatedWithEtag() throws IOException {
+        return load(revalidating);
+    }
+
+    @Benchmark
+    public File downloaded() throws IOException {
+        FileUtils.cleanDirectory(cacheFolder);
+        return load(revalidating);
+    }
+
+    private File load(BitbucketConfiguration configuration) throws IOException {
+        try (ClientDownloader downloader = new ClientDownloader(httpClient, configuration, console, new RunSummary())) {
+            return downloader.load();
+        }
+    }
+
+    private BitbucketConfiguration configuration(String ttl) {
+        Map<String, String> environment = new HashMap<>();
+        environment.put("METERIAN_CLIENT_CACHE_FOLDER", cacheFolder.getAbsolutePath());
+        environment.put("METERIAN_CLIENT_CACHE_TTL", ttl);
+        return new BitbucketConfiguration(meterian.getBaseUrl(), null, null, null, null, null, null)
+                .withEnvironment(environment);
+    }
+}
@@ -0,0 +1,92 @@
+package io.meterian.bitbucket;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of Bitbucket responses shaped like the real ones, i.e. carrying the links, authors
+ * and descriptions the client does not need.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BitbucketResponseParserBenchmark {
+
+    @Param({"10", "50"})
+    public int pageLength;
+
+    private final BitbucketResponseParser parser = new BitbucketResponseParser();
+
+    private byte[] pullRequests;
+    private byte[] branch;
+
+    @Setup
+    public void setup() {
+        JSONArray values = new JSONArray();
+        for (int i = 1; i <= pageLength; i++) {
+            values.put(new JSONObject()
+                    .put("id", i)
+                    .put("title", "Fixed by Meterian " + i)
+                    .put("description", "Meterian has upgraded the following dependencies to their latest safe version...")
+                    .put("state", "OPEN")
+                    .put("created_on", OffsetDateTime.now().minusDays(i).toString())
+                    .put("author", new JSONObject().put("display_name", "Meterian Bot").put("uuid", "{" + i + "}"))
+                    .put("links", links("https://api.bitbucket.org/2.0/repositories/meterian/project/pullrequests/" + i))
+                    .put("source", new JSONObject()
+                            .put("branch", new JSONObject().put("name", "fixed-by-meterian-" + i))
+                            .put("commit", new JSONObject().put("hash", "0123456789ab" + i))));
+        }
+        pullRequests = new JSONObject()
+                .put("pagelen", pageLength)
+                .put("page", 1)
+                .put("values", values)
+                .put("next", "https://api.bitbucket.org/2.0/repositories/meterian/project/pullrequests?page=2")
+                .toString().getBytes(StandardCharsets.UTF_8);
+
+        branch = new JSONObject()
+                .put("name", "fixed-by-meterian-1")
+                .put("links", links("https://api.bitbucket.org/2.0/repositories/meterian/project/refs/branches/fixed-by-meterian-1"))
+                .put("target", new JSONObject()
+                        .put("hash", "0123456789ab")
+                        .put("date", OffsetDateTime.now().toString())
+                        .put("message", "Fixed by Meterian"))
+                .toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public BitbucketResponseParser.PullRequestsPage parsePullRequests() throws IOException {
+        return parser.parsePullRequests(new ByteArrayInputStream(pullRequests));
+    }
+
+    @Benchmark
+    public Optional<OffsetDateTime> parseBranchDate() throws IOException {
+        return parser.parseBranchDate(new ByteArrayInputStream(branch));
+    }
+
+    private JSONObject links(String self) {
+        return new JSONObject()
+                .put("self", new JSONObject().put("href", self))
+                .put("html", new JSONObject().put("href", self.replace("api.bitbucket.org/2.0/repositories", "bitbucket.org")));
+    }
+}
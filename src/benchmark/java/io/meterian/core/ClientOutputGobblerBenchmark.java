@@ -0,0 +1,87 @@
+package io.meterian.core;
+
+import io.meterian.MeterianConsole;
+import io.meterian.Metrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Processing of the scanner output, one line at a time, as the client process gobblers do.
+ * Logging is raised to WARNING so that the console handler does not flood the benchmark output.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ClientOutputGobblerBenchmark {
+
+    private static final String REPORT_LINE = "Full report available at: "
+            + "https://www.meterian.com/projects/?pid=a8c3d2f0-0e7e-4c5a-9f1b-3b6b1c2d4e5f&branch=master&mode=eli";
+
+    @Param({"1000", "10000"})
+    public int lines;
+
+    private String[] output;
+    private MeterianConsole console;
+    private final Metrics metrics = new Metrics();
+
+    @Setup
+    public void setup() {
+        java.util.logging.Logger.getLogger("").setLevel(Level.WARNING);
+        console = new MeterianConsole(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+
+        output = new String[lines];
+        for (int i = 0; i < lines; i++) {
+            if (i % 100 == 0)
+                output[i] = "Checking https://repo.maven.apache.org/maven2/org/module" + i + "/1.0/module" + i + ".pom";
+            else
+                output[i] = "- dependency org.module" + i + ":module" + i + ":1." + i + " (compile), no known vulnerabilities";
+        }
+        output[lines - 1] = REPORT_LINE;
+    }
+
+    @Benchmark
+    public Meterian.Result processOutput() {
+        Meterian.Result result = new Meterian.Result();
+        ClientOutputGobbler gobbler = new ClientOutputGobbler(console, result, metrics);
+        for (String line : output)
+            gobbler.process("STDOUT", line);
+        return result;
+    }
+
+    @Benchmark
+    public Meterian.Result processReusedBuffer() {
+        Meterian.Result result = new Meterian.Result();
+        ClientOutputGobbler gobbler = new ClientOutputGobbler(console, result, metrics);
+        StringBuilder buffer = new StringBuilder();
+        for (String line : output) {
+            buffer.setLength(0);
+            gobbler.process("STDOUT", buffer.append(line));
+        }
+        return result;
+    }
+}
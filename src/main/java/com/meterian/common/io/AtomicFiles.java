@@ -0,0 +1,53 @@
+package com.meterian.common.io;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Replaces files so that readers, in this or other processes, see either the old or the new content.
+ */
+public class AtomicFiles {
+
+    public static interface Content {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Writes the content to a temporary file beside the target, then moves it over the target.
+     */
+    public static void write(File target, Content content) throws IOException {
+        File folder = target.getAbsoluteFile().getParentFile();
+        folder.mkdirs();
+
+        File temp = File.createTempFile(target.getName(), ".tmp", folder);
+        try {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp))) {
+                content.writeTo(out);
+            }
+            move(temp, target);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    public static void write(File target, byte[] content) throws IOException {
+        write(target, out -> out.write(content));
+    }
+
+    /**
+     * Moves atomically where the file system allows it, replacing the target.
+     */
+    public static void move(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -2,4 +2,12 @@ package com.meterian.common.system;
 
 public interface LineGobbler {
     public void process(String type, String line);
-}
\ No newline at end of file
+
+    /**
+     * Called by the NIO gobbler with a view over its line buffer, valid only for the duration of the call:
+     * override to look at the line without turning it into a String.
+     */
+    public default void process(String type, CharSequence line) {
+        process(type, line.toString());
+    }
+}
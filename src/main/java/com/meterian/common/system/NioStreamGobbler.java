@@ -0,0 +1,150 @@
+package com.meterian.common.system;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Gobbles a stream decoding it as UTF-8 through large buffers, and hands each line to the
+ * {@link LineGobbler} as a reused {@link CharSequence}, so that no String is created unless
+ * the gobbler asks for one. Lines end as in {@link java.io.BufferedReader#readLine()}.
+ */
+public class NioStreamGobbler implements Runnable {
+    private static final Logger log = LoggerFactory.getLogger(Shell.class);
+
+    static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream input;
+    private final String type;
+    private final LineGobbler gobbler;
+    private final CountDownLatch latch;
+    private final int bufferSize;
+
+    private final Line line = new Line();
+    private boolean skipLineFeed = false;
+
+    NioStreamGobbler(InputStream input, String type, LineGobbler gobbler, CountDownLatch latch) {
+        this(input, type, gobbler, latch, DEFAULT_BUFFER_SIZE);
+    }
+
+    NioStreamGobbler(InputStream input, String type, LineGobbler gobbler, CountDownLatch latch, int bufferSize) {
+        this.input = input;
+        this.type = type;
+        this.gobbler = gobbler;
+        this.latch = latch;
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public void run() {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer bytes = ByteBuffer.allocate(bufferSize);
+        // UTF-8 never decodes to more chars than bytes
+        CharBuffer chars = CharBuffer.allocate(bufferSize);
+
+        try (ReadableByteChannel channel = Channels.newChannel(input)) {
+            boolean eof = false;
+            while (!eof) {
+                eof = channel.read(bytes) == -1;
+                bytes.flip();
+                decoder.decode(bytes, chars, eof);
+                if (eof)
+                    decoder.flush(chars);
+                bytes.compact();
+
+                chars.flip();
+                split(chars.array(), chars.position(), chars.limit());
+                chars.clear();
+            }
+
+            if (line.length() > 0)
+                gobbler.process(type, line);
+        } catch (IOException ex) {
+            log.warn(String.format("Unexpected exception gobbling %s stream", type), ex);
+        } finally {
+            latch.countDown();
+        }
+    }
+
+    private void split(char[] text, int from, int to) {
+        if (from == to)
+            return;
+
+        int start = from;
+        if (skipLineFeed && text[start] == '\n')
+            start++;
+        skipLineFeed = false;
+
+        for (int i = start; i < to; i++) {
+            char c = text[i];
+            if (c != '\n' && c != '\r')
+                continue;
+
+            line.append(text, start, i);
+            gobbler.process(type, line);
+            line.clear();
+            start = i + 1;
+            if (c == '\r') {
+                if (start == to)
+                    skipLineFeed = true;
+                else if (text[start] == '\n')
+                    start = ++i + 1;
+            }
+        }
+        line.append(text, start, to);
+    }
+
+    static class Line implements CharSequence {
+        private char[] value = new char[256];
+        private int length = 0;
+
+        void append(char[] text, int start, int end) {
+            int count = end - start;
+            if (length + count > value.length)
+                value = Arrays.copyOf(value, Math.max(value.length * 2, length + count));
+            System.arraycopy(text, start, value, length, count);
+            length += count;
+        }
+
+        void clear() {
+            length = 0;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length)
+                throw new IndexOutOfBoundsException(String.valueOf(index));
+            return value[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end)
+                throw new IndexOutOfBoundsException(start + ", " + end);
+            return new String(value, start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(value, 0, length);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.meterian.common.system;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reaches the descendants of a process through the Java 9 ProcessHandle API, by reflection as this
+ * code still runs on Java 8, where only the process itself can be destroyed.
+ */
+class ProcessTree {
+    private static final Logger log = LoggerFactory.getLogger(ProcessTree.class);
+
+    private static final Method DESCENDANTS;
+    private static final Method DESTROY;
+    private static final Method DESTROY_FORCIBLY;
+    private static final Method IS_ALIVE;
+
+    static {
+        Method descendants = null, destroy = null, destroyForcibly = null, isAlive = null;
+        try {
+            Class<?> handle = Class.forName("java.lang.ProcessHandle");
+            descendants = Process.class.getMethod("descendants");
+            destroy = handle.getMethod("destroy");
+            destroyForcibly = handle.getMethod("destroyForcibly");
+            isAlive = handle.getMethod("isAlive");
+        } catch (ReflectiveOperationException ex) {
+            descendants = null;
+        }
+        DESCENDANTS = descendants;
+        DESTROY = destroy;
+        DESTROY_FORCIBLY = destroyForcibly;
+        IS_ALIVE = isAlive;
+    }
+
+    /**
+     * Captured before destroying the process, as its children are handed over to init once it dies.
+     */
+    @SuppressWarnings("unchecked")
+    static List<Object> descendants(Process process) {
+        if (DESCENDANTS == null)
+            return Collections.emptyList();
+
+        try {
+            return ((Stream<Object>) DESCENDANTS.invoke(process)).collect(Collectors.toList());
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            log.debug("Unable to list the descendants of {}", process, ex);
+            return Collections.emptyList();
+        }
+    }
+
+    static void destroy(List<Object> handles, boolean forcibly) {
+        for (Object handle : handles) {
+            try {
+                if (forcibly && !(Boolean) IS_ALIVE.invoke(handle))
+                    continue;
+                (forcibly ? DESTROY_FORCIBLY : DESTROY).invoke(handle);
+            } catch (ReflectiveOperationException | RuntimeException ex) {
+                log.debug("Unable to destroy process {}", handle, ex);
+            }
+        }
+    }
+}
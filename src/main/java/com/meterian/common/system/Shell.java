@@ -2,14 +2,28 @@ package com.meterian.common.system;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.InputStream;
+import java.lang.ProcessBuilder.Redirect;
+import java.lang.reflect.Method;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,7 +32,7 @@ import org.springframework.stereotype.Component;
 
 @Component
 @Scope("singleton")
-public class Shell {
+public class Shell implements AutoCloseable {
 
     private static final Logger log = LoggerFactory.getLogger(Shell.class);
 
@@ -26,7 +40,12 @@ public class Shell {
        private LineGobbler outputGobbler = NO_GOBBLER;
        private LineGobbler errorGobbler = NO_GOBBLER;
        private File workingFolder = null;
-       private List<String> envps = new ArrayList<>();
+       private Redirect outputRedirect = Redirect.PIPE;
+       private Redirect errorRedirect = Redirect.PIPE;
+       private boolean mergeErrorIntoOutput = false;
+       private boolean nioGobbling = false;
+       // applied on top of the environment inherited from this process
+       private Map<String, String> environment = new LinkedHashMap<>();
 
        public Options withOutputGobbler(LineGobbler gobbler) {
            this.outputGobbler = gobbler;
@@ -43,17 +62,41 @@ public class Shell {
         	return this;
         }
 
+        /**
+         * Where the standard output goes: {@link Redirect#PIPE} (the default) sends it to the output gobbler,
+         * while {@link Redirect#INHERIT} or a file redirect bypass this process entirely.
+         */
+        public Options withOutputRedirect(Redirect redirect) {
+            this.outputRedirect = redirect;
+            return this;
+        }
+
+        public Options withErrorRedirect(Redirect redirect) {
+            this.errorRedirect = redirect;
+            return this;
+        }
+
+        public Options withErrorMergedIntoOutput() {
+            this.mergeErrorIntoOutput = true;
+            return this;
+        }
+
+        /**
+         * Gobbles the piped streams with the {@link NioStreamGobbler}, decoding them as UTF-8 rather
+         * than with the platform charset.
+         */
+        public Options withNioGobbling() {
+            this.nioGobbling = true;
+            return this;
+        }
+
         public Options withEnvironmentVariable(String name, String value) {
-            envps.add(name+"="+value);
+            environment.put(name, value);
             return this;
         }
         
         public Options withEnvironmentVariables(Map<String, String> env) {
-            for (String name : env.keySet()) {
-                String value = env.get(name);
-                envps.add(name+"="+value);
-            }
-
+            environment.putAll(env);
             return this;
         }
 
@@ -63,10 +106,6 @@ public class Shell {
             else
                 return this;
         }
-        private String[] envp() {
-        	return envps.toArray(new String[envps.size()]);
-        }
-        
         public File getWorkingDirectory() {
             return workingFolder;
         }
@@ -81,29 +120,35 @@ public class Shell {
 
         @Override
         public String toString() {
-            return String.format("[output=%s, error=%s, folder=%s, envp=%s]", toString(outputGobbler), toString(errorGobbler), workingFolder, envps);
+            // names only, values may hold credentials
+            return String.format("[output=%s, error=%s, nio=%s, folder=%s, env=%s]", toString(outputGobbler, outputRedirect),
+                    mergeErrorIntoOutput ? "OUTPUT" : toString(errorGobbler, errorRedirect), nioGobbling, workingFolder, environment.keySet());
         }
 
-        private String toString(LineGobbler gobbler) {
+        private String toString(LineGobbler gobbler, Redirect redirect) {
+            if (redirect != Redirect.PIPE)
+                return redirect.toString();
             return (gobbler == NO_GOBBLER) ? "DEFAULT" : "CUSTOM";
         }
 
         public String getEnvironmentVariable(String key) {
-            for (String envp : envps) {
-                String[] tokens = envp.split("=");
-                if (key.equals(tokens[0]))
-                    return tokens[1];
-            }
-            return null;
+            return environment.get(key);
         }
 
     }
 
     public static class Task {
         public static final long DEFAULT_TIMEOUT_IN_SECONDS = 60L*5L;
+        public static final long DEFAULT_GRACE_PERIOD_IN_SECONDS = 10L;
+        public static final int TIMED_OUT = -1;
 
         private final Process process;
         private final CountDownLatch ioLatch;
+        private final CompletableFuture<Integer> completion = new CompletableFuture<>();
+        private final AtomicBoolean watched = new AtomicBoolean();
+        // set by the first waiter that settles the outcome, the only one completing the task or destroying the process
+        private final AtomicBoolean settled = new AtomicBoolean();
+        private volatile boolean timedOut = false;
 
         public Task(Process process) {
             this.process = process;
@@ -115,21 +160,122 @@ public class Shell {
         }
 
         public int waitFor(long timeoutInSeconds) throws IOException {
+            return this.waitFor(timeoutInSeconds, TimeUnit.SECONDS);
+        }
+
+        /**
+         * Waits for the process to exit and its output to be gobbled, all within the given timeout.
+         * When the timeout expires the process and its descendants are destroyed, and {@link #TIMED_OUT}
+         * is returned.
+         */
+        public int waitFor(long timeout, TimeUnit unit) throws IOException {
+            if (completion.isDone())
+                return completedExitValue();
+
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
             try {
-                ioLatch.await(timeoutInSeconds, TimeUnit.SECONDS);
-                return process.waitFor(timeoutInSeconds, TimeUnit.SECONDS) ? process.exitValue() : -1;
+                if (!process.waitFor(remaining(deadline), TimeUnit.NANOSECONDS) || !ioLatch.await(remaining(deadline), TimeUnit.NANOSECONDS)) {
+                    if (settled.compareAndSet(false, true)) {
+                        log.warn("Process {} still running after {} {}, destroying it", process, timeout, unit);
+                        timedOut = true;
+                        destroy();
+                        completion.completeExceptionally(new TimeoutException("Process still running after " + timeout + " " + unit));
+                    }
+                } else if (settled.compareAndSet(false, true)) {
+                    completion.complete(process.exitValue());
+                }
+
+                return awaitExitValue();
             } catch (InterruptedException e) {
+                if (settled.compareAndSet(false, true)) {
+                    destroy();
+                    completion.completeExceptionally(e);
+                }
                 Thread.currentThread().interrupt();
                 throw new IOException("Operation interrupted!", e);
             }
         }
 
+        /**
+         * Completes with the exit value once the process has exited and its output has been gobbled,
+         * or exceptionally with a {@link TimeoutException} once it has been destroyed for outliving the timeout.
+         */
+        public CompletableFuture<Integer> onExit(long timeout, TimeUnit unit) {
+            if (watched.compareAndSet(false, true) && !completion.isDone()) {
+                // a thread of its own, as a gobbling thread pool may be bounded and the wait can be long
+                Thread waiter = new Thread(() -> {
+                    try {
+                        waitFor(timeout, unit);
+                    } catch (IOException | RuntimeException ex) {
+                        if (settled.compareAndSet(false, true))
+                            completion.completeExceptionally(ex);
+                    }
+                }, "meterian-shell-waiter");
+                waiter.setDaemon(true);
+                waiter.start();
+            }
+            return completion;
+        }
+
+        public CompletableFuture<Integer> onExit() {
+            return onExit(DEFAULT_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS);
+        }
+
+        public boolean isTimedOut() {
+            return timedOut;
+        }
+
+        public boolean isAlive() {
+            return process.isAlive();
+        }
+
         public int exitValue() {
             return process.exitValue();
         }
 
         public void destroy() {
+            destroy(DEFAULT_GRACE_PERIOD_IN_SECONDS, TimeUnit.SECONDS);
+        }
+
+        /**
+         * Asks the process and its descendants to terminate, then kills whatever is still alive after the grace period.
+         */
+        public void destroy(long gracePeriod, TimeUnit unit) {
+            List<Object> descendants = ProcessTree.descendants(process);
             process.destroy();
+            ProcessTree.destroy(descendants, false);
+            try {
+                process.waitFor(gracePeriod, unit);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (process.isAlive())
+                    process.destroyForcibly();
+                ProcessTree.destroy(descendants, true);
+            }
+        }
+
+        private int completedExitValue() {
+            try {
+                return completion.getNow(TIMED_OUT);
+            } catch (CompletionException | CancellationException ex) {
+                return TIMED_OUT;
+            }
+        }
+
+        /**
+         * @return the exit value once the outcome is settled, possibly by another waiter still destroying the process
+         */
+        private int awaitExitValue() throws InterruptedException {
+            try {
+                return completion.get();
+            } catch (ExecutionException | CancellationException ex) {
+                return TIMED_OUT;
+            }
+        }
+
+        private static long remaining(long deadline) {
+            return Math.max(0L, deadline - System.nanoTime());
         }
     };
 
@@ -138,6 +284,11 @@ public class Shell {
             if (log.isTraceEnabled())
                 log.trace("{}> {}", type, text);
         }
+
+        public void process(String type, CharSequence text) {
+            if (log.isTraceEnabled())
+                log.trace("{}> {}", type, text);
+        }
     };
 
     public static final LineGobbler DEBUG_GOBBLER = new LineGobbler() {
@@ -146,14 +297,94 @@ public class Shell {
         }
     };
 
+    // each running command needs up to two gobbling threads for as long as it runs
+    private static final int MAX_SHARED_THREADS = Math.max(8, 4 * Runtime.getRuntime().availableProcessors());
+
+    private static volatile ExecutorService sharedThreadPool;
+
     private final ExecutorService threadPool;
+    private final boolean ownsThreadPool;
 
+    /**
+     * Creates a shell gobbling on the {@link #sharedThreadPool() shared thread pool}, never shut down by {@link #close()}.
+     */
     public Shell() {
-        this(Executors.newCachedThreadPool());
+        this(sharedThreadPool(), false);
     }
 
+    /**
+     * Creates a shell gobbling on the given thread pool, that stays under the control of the caller.
+     */
     public Shell(ExecutorService threadPool) {
+        this(threadPool, false);
+    }
+
+    /**
+     * Creates a shell gobbling on the given thread pool, shut down by {@link #close()} when owned.
+     */
+    public Shell(ExecutorService threadPool, boolean ownsThreadPool) {
         this.threadPool = threadPool;
+        this.ownsThreadPool = ownsThreadPool;
+    }
+
+    /**
+     * The thread pool shared by all the shells in this JVM: one virtual thread per task when the
+     * JDK supports them, otherwise a {@link #newBoundedThreadPool(int) bounded pool} of daemon threads.
+     */
+    public static ExecutorService sharedThreadPool() {
+        if (sharedThreadPool == null) {
+            synchronized (Shell.class) {
+                if (sharedThreadPool == null) {
+                    ExecutorService pool = newVirtualThreadPool();
+                    sharedThreadPool = (pool != null) ? pool : newBoundedThreadPool(MAX_SHARED_THREADS);
+                }
+            }
+        }
+        return sharedThreadPool;
+    }
+
+    /**
+     * A pool of daemon threads that expire when idle, so that the thread count stays flat however many
+     * commands are launched over time. Tasks are never queued, as a gobbler waiting for a thread would
+     * leave its process blocked on a full pipe: beyond the maximum each task gets a thread of its own,
+     * with a warning.
+     */
+    public static ExecutorService newBoundedThreadPool(int maxThreads) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = task -> {
+            Thread thread = new Thread(task, "meterian-shell-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        return new ThreadPoolExecutor(0, maxThreads, 30L, TimeUnit.SECONDS, new SynchronousQueue<>(), factory, (task, pool) -> {
+            if (pool.isShutdown())
+                throw new RejectedExecutionException("Shell thread pool shut down");
+
+            log.warn("All the {} shell threads are busy, starting an extra one", maxThreads);
+            factory.newThread(task).start();
+        });
+    }
+
+    /**
+     * @return an executor starting a virtual thread per task, or null when the JDK has no virtual threads
+     */
+    public static ExecutorService newVirtualThreadPool() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException ex) {
+            return null;
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            log.debug("Virtual threads not available", ex);
+            return null;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (ownsThreadPool)
+            threadPool.shutdown();
     }
 
     public Task exec(String... commands) throws IOException {
@@ -164,15 +395,32 @@ public class Shell {
         if (log.isDebugEnabled())
             log.debug("Running shell command {} with options {}",Arrays.asList(commands), options);
 
-        Process process;
-        if (options.workingFolder == null)
-            process = Runtime.getRuntime().exec(commands, options.envp());
-        else
-            process = Runtime.getRuntime().exec(commands, options.envp(), options.workingFolder);
+        ProcessBuilder builder = new ProcessBuilder(commands)
+                .directory(options.workingFolder)
+                .redirectOutput(options.outputRedirect)
+                .redirectError(options.errorRedirect)
+                .redirectErrorStream(options.mergeErrorIntoOutput);
+        Map<String, String> environment = builder.environment();
+        for (Map.Entry<String, String> variable : options.environment.entrySet()) {
+            if (variable.getValue() == null)
+                environment.remove(variable.getKey());
+            else
+                environment.put(variable.getKey(), variable.getValue());
+        }
 
+        Process process = builder.start();
         Task task =  new Task(process);
-        threadPool.execute(new StreamGobbler(process.getInputStream(), "STDOUT", options.outputGobbler, task.ioLatch));
-        threadPool.execute(new StreamGobbler(process.getErrorStream(), "STDERR", options.errorGobbler, task.ioLatch));
+        gobble(process.getInputStream(), "STDOUT", options.outputGobbler, options.outputRedirect == Redirect.PIPE, options, task);
+        gobble(process.getErrorStream(), "STDERR", options.errorGobbler, options.errorRedirect == Redirect.PIPE && !options.mergeErrorIntoOutput, options, task);
         return task;
     }
+
+    private void gobble(InputStream input, String type, LineGobbler gobbler, boolean piped, Options options, Task task) {
+        if (piped && options.nioGobbling)
+            threadPool.execute(new NioStreamGobbler(input, type, gobbler, task.ioLatch));
+        else if (piped)
+            threadPool.execute(new StreamGobbler(input, type, gobbler, task.ioLatch));
+        else
+            task.ioLatch.countDown();
+    }
 }
@@ -1,11 +1,15 @@
 package io.meterian;
 
+import io.meterian.bitbucket.BitbucketResponseCache;
 import io.meterian.bitbucket.LocalBitBucketClient;
 import io.meterian.git.LocalGitClient;
 import io.meterian.bitbucket.pipelines.BitbucketConfiguration;
+import org.apache.http.client.HttpClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.Callable;
+
 public class AutoFixFeature {
 
     private static final String ABORTING_BRANCH_AND_PR_CREATION_PROCESS = "[meterian] Aborting, not continuing with rest of the local/remote branch or pull request creation process.";
@@ -25,11 +29,17 @@ public class AutoFixFeature {
     private ClientRunner clientRunner;
     private MeterianConsole console;
     private BitbucketConfiguration configuration;
+    private HttpClient httpClient;
+    private RunSummary summary;
 
     public AutoFixFeature(BitbucketConfiguration configuration,
                           ClientRunner clientRunner,
-                          MeterianConsole console) {
+                          MeterianConsole console,
+                          HttpClient httpClient,
+                          RunSummary summary) {
         this.configuration = configuration;
+        this.httpClient = httpClient;
+        this.summary = summary;
         this.clientRunner = clientRunner;
         this.console = console;
 
@@ -38,13 +48,14 @@ public class AutoFixFeature {
                 configuration.getMeterianBitbucketUser(),
                 configuration.getMeterianBitbucketAppPassword(),
                 configuration.getMeterianBitbucketEmail(),
-                console);
+                console,
+                summary.getMetrics());
     }
 
     public int execute() {
         int exitCode;
         try {
-            if (localGitClient.currentBranchWasCreatedByMeterianClient()) {
+            if (git(localGitClient::currentBranchWasCreatedByMeterianClient)) {
                 String thisBranchIsFixedMessage = String.format(
                         BRANCH_ALREADY_FIXED_WARNING, localGitClient.getCurrentBranch()
                 );
@@ -52,9 +63,12 @@ public class AutoFixFeature {
                 console.println(thisBranchIsFixedMessage);
 
                 return SUCCESSFUL;
-            } else if (localGitClient.currentBranchHasNotBeenFixedYet()) {
+            } else if (git(localGitClient::currentBranchHasNotBeenFixedYet)) {
                 if (failedClientExecution()) {
-                    localGitClient.resetChanges();
+                    git(() -> {
+                        localGitClient.resetChanges();
+                        return null;
+                    });
 
                     log.error(ABORTING_BRANCH_AND_PR_CREATION_PROCESS);
                     console.println(ABORTING_BRANCH_AND_PR_CREATION_PROCESS);
@@ -77,8 +91,11 @@ public class AutoFixFeature {
         }
 
         try {
-            if (localGitClient.hasChanges()) {
-                localGitClient.applyCommitsToLocalRepo();
+            if (git(localGitClient::hasChanges)) {
+                git(() -> {
+                    localGitClient.applyCommitsToLocalRepo();
+                    return null;
+                });
             } else {
                 log.warn(LocalGitClient.NO_CHANGES_FOUND_WARNING);
                 console.println(LocalGitClient.NO_CHANGES_FOUND_WARNING);
@@ -88,23 +105,41 @@ public class AutoFixFeature {
             throw new RuntimeException(ex);
         }
 
+        long started = System.nanoTime();
         localGitClient.pushBranchToRemoteRepo();
+        summary.recordPhase(RunSummary.GIT, started);
 
+        started = System.nanoTime();
         try {
             LocalBitBucketClient localBitBucketClient = new LocalBitBucketClient(
+                    httpClient,
+                    new BitbucketResponseCache(configuration),
+                    configuration.getBitbucketApiUrl(),
                     configuration.getMeterianBitbucketUser(),
                     configuration.getMeterianBitbucketAppPassword(),
                     localGitClient.getRepositoryName(),
-                    console);
+                    console,
+                    summary.getMetrics());
             localBitBucketClient.createPullRequest(localGitClient.getCurrentBranch());
         } catch (Exception ex) {
             log.error(String.format("Pull Request was not created, due to the error: %s", ex.getMessage()), ex);
             throw new RuntimeException(ex);
+        } finally {
+            summary.recordPhase(RunSummary.PULL_REQUEST, started);
         }
 
         return exitCode;
     }
 
+    private <T> T git(Callable<T> operation) throws Exception {
+        long started = System.nanoTime();
+        try {
+            return operation.call();
+        } finally {
+            summary.recordPhase(RunSummary.GIT, started);
+        }
+    }
+
     private boolean failedClientExecution() {
         return clientRunner.execute() != 0;
     }
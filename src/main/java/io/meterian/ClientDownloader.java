@@ -1,68 +1,354 @@
 package io.meterian;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
+import com.meterian.common.io.AtomicFiles;
+import com.meterian.common.io.Sha256;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.client.methods.HttpHead;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class ClientDownloader {
+/**
+ * Loads the Meterian client from a cache shared by all the builds on the host.
+ *
+ * The cache holds one entry per client, named after its SHA-256, so that the clients served by different
+ * base urls and channels, or by the same channel over time, never overwrite each other:
+ * <pre>
+ * clients/&lt;sha256&gt;/meterian-cli.jar        the client
+ * clients/&lt;sha256&gt;/meterian-cli.jar.lock   shared while a build runs the client, exclusive to evict it
+ * channels/&lt;url&gt;/meterian-cli.jar.*        ETag, last check and SHA-256 of the client served by the url,
+ *                                        locked while a build updates them
+ * </pre>
+ * Lock files are never deleted, so that every process always locks the same file. The loaded client is
+ * protected from eviction until {@link #close()}.
+ */
+public class ClientDownloader implements AutoCloseable {
+
+    public static interface Config {
+
+        String getMeterianBaseUrl();
+
+        String getClientChannel();
+
+        File getClientCacheFolder();
+
+        long getClientCacheMaxSizeInMegabytes();
+
+        long getClientCacheTtlInSeconds();
+
+        boolean isClientOffline();
+
+        /**
+         * @return the SHA-256 the client must match, whatever the server publishes, null if not pinned
+         */
+        String getClientSha256();
+
+        /**
+         * @return true to refuse a client for which no SHA-256 is pinned or published
+         */
+        boolean isClientChecksumRequired();
+
+    }
 
     private static final Logger log = LoggerFactory.getLogger(ClientDownloader.class);
     
     public static final String JAR_FILENAME = "meterian-cli.jar";
     public static final File CACHE_FOLDER = new File(System.getProperty("user.home"), ".meterian");
-    public static final File JAR_FILE = new File(CACHE_FOLDER, JAR_FILENAME);
-    public static final File ETAG_FILE = new File(CACHE_FOLDER, JAR_FILENAME + ".etag");
+    public static final String CLIENTS_FOLDER_NAME = "clients";
+    public static final String CHANNELS_FOLDER_NAME = "channels";
+    public static final String DEFAULT_CHANNEL = "latest-client-canary";
+
+    private static final ReentrantLock LOCAL_LOCK = new ReentrantLock();
+    // FileChannel locks are held per JVM, so the leases of this JVM are counted here
+    private static final Map<Path, Lease> LEASES = new HashMap<>();
+
+    private static final String LOCK_SUFFIX = ".lock";
+    private static final long LEGACY_CLIENT_GRACE_PERIOD = TimeUnit.DAYS.toMillis(1);
+
+    private static final int MAX_DOWNLOAD_ATTEMPTS = 3;
+    private static final int TRANSFER_CHUNK_SIZE = 64 * 1024;
 
     private static final Charset UTF_8 = Charset.forName("UTF-8");
 
     private final HttpClient client;
     private final String url;
+    private final Config config;
     private final MeterianConsole console;
+    private final RunSummary summary;
+
+    private final File clientsFolder;
+    private final File folder;
+    private final File etagFile;
+    private final File checkedFile;
+    private final File shaFile;
+    private final File partFile;
+    private final File partEtagFile;
+    private final File lockFile;
 
-    public ClientDownloader(HttpClient client, String baseurl, MeterianConsole console) {
+    private File jarFile;
+    private Path leased;
+
+    public ClientDownloader(HttpClient client, Config config, MeterianConsole console, RunSummary summary) {
         this.client = client;
-        this.url = HttpClientFactory.makeUrl(baseurl, "latest-client-canary");
+        this.url = HttpClientFactory.makeUrl(config.getMeterianBaseUrl(), config.getClientChannel());
+        this.config = config;
         this.console = console;
+        this.summary = summary;
+
+        this.clientsFolder = new File(config.getClientCacheFolder(), CLIENTS_FOLDER_NAME);
+        this.folder = new File(new File(config.getClientCacheFolder(), CHANNELS_FOLDER_NAME), Sha256.of(url).substring(0, 16));
+        this.etagFile = new File(folder, JAR_FILENAME + ".etag");
+        this.checkedFile = new File(folder, JAR_FILENAME + ".checked");
+        this.shaFile = new File(folder, JAR_FILENAME + ".sha256sum.txt");
+        this.partFile = new File(folder, JAR_FILENAME + ".part");
+        this.partEtagFile = new File(folder, JAR_FILENAME + ".part.etag");
+        this.lockFile = new File(folder, JAR_FILENAME + LOCK_SUFFIX);
     }
 
     public File load() throws IOException {
-        CACHE_FOLDER.mkdirs();
+        long started = System.nanoTime();
+        try {
+            return loadClient();
+        } finally {
+            summary.recordPhase(RunSummary.CLIENT_DOWNLOAD, started);
+        }
+    }
 
-        URI uri = newURI(url);
+    private File loadClient() throws IOException {
+        release();
+        folder.mkdirs();
+        deleteLegacyClient();
 
-        boolean found = false;
-        log.debug("etagFile: {} (exist={})", ETAG_FILE, ETAG_FILE.exists());
-        log.debug("cachedFile: {} (exist={})", JAR_FILE, JAR_FILE.exists());
-        if (JAR_FILE.exists() && ETAG_FILE.exists()) {
-            log.debug("etagFile and cachedFile found");
-            String cachedEtag = readContents(ETAG_FILE);
-            String currentEtag = getEtag(uri);
-            found = currentEtag.equals(cachedEtag);
+        if (canUseCachedClient() && lease(currentEntry())) {
+            summary.recordClientCache(RunSummary.CACHE_HIT);
+            return ready();
         }
 
-        if (!found) {
-            console.println("[meterian] Downloading the latest meterian client...");
-            log.debug("Etag not matching, downloading client from url {}", uri);
-            updateFiles(uri, JAR_FILE, ETAG_FILE);
-        } else {
-            log.debug("etag matches, using cached client");
+        boolean downloaded = false;
+        // the lock is held across processes sharing the cache folder, and
+        // FileChannel.lock() is per JVM, hence the local lock as well
+        LOCAL_LOCK.lock();
+        try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = acquire(channel)) {
+
+            // another build may have refreshed the client while we were waiting
+            if (canUseCachedClient() && lease(currentEntry())) {
+                summary.recordClientCache(RunSummary.CACHE_HIT);
+                return ready();
+            }
+
+            URI uri = newURI(url);
+            for (int attempt = 1; ; attempt++) {
+                File entry = currentEntry();
+                log.debug("etagFile: {} (exist={})", etagFile, etagFile.exists());
+                log.debug("cached entry: {}", entry);
+                String cachedEtag = "";
+                if (entry != null && new File(entry, JAR_FILENAME).exists() && etagFile.exists()) {
+                    log.debug("etagFile and cachedFile found");
+                    cachedEtag = readContents(etagFile);
+                }
+
+                try {
+                    downloaded = refreshFiles(uri, cachedEtag);
+                } catch (IOException ex) {
+                    // keep the build going with the client verified on a previous run
+                    if (cachedEtag.isEmpty() || !lease(entry))
+                        throw ex;
+
+                    log.warn("Unable to check for a newer Meterian client at {}, using the cached one", uri, ex);
+                    console.println("[meterian] Warning: unable to check for a newer Meterian client (" + ex.getMessage() + "), using the cached one");
+                    summary.recordClientCache(RunSummary.CACHE_STALE);
+                    return ready();
+                }
+                Files.write(checkedFile.toPath(), Long.toString(System.currentTimeMillis()).getBytes(UTF_8));
+                if (lease(currentEntry()))
+                    break;
+
+                // evicted by another build between the check and the lease
+                if (attempt == 2)
+                    throw new IOException("The Meterian client was evicted from the cache before it could be used, please raise METERIAN_CLIENT_CACHE_SIZE_MB");
+                Files.deleteIfExists(etagFile.toPath());
+            }
+
+            if (downloaded) {
+                summary.recordClientCache(RunSummary.CACHE_MISS);
+            } else {
+                log.debug("etag matches, using cached client");
+                summary.recordClientCache(RunSummary.CACHE_REVALIDATED);
+            }
+        } finally {
+            LOCAL_LOCK.unlock();
         }
 
+        if (downloaded)
+            evictLeastRecentlyUsed();
+        return ready();
+    }
+
+    /**
+     * Releases the client loaded, that can then be evicted from the cache.
+     */
+    @Override
+    public void close() {
+        release();
+    }
+
+    private boolean canUseCachedClient() {
+        File entry = currentEntry();
+        if (entry == null || !new File(entry, JAR_FILENAME).exists())
+            return false;
+
+        if (config.isClientOffline()) {
+            log.debug("offline mode, using cached client without checking for updates");
+            return true;
+        }
+
+        if (recentlyChecked()) {
+            log.debug("client checked less than {} seconds ago, using cached client", config.getClientCacheTtlInSeconds());
+            return true;
+        }
+
+        return false;
+    }
+
+    private File currentEntry() {
+        String sha = shaFile.exists() ? readContents(shaFile).trim() : "";
+        return sha.isEmpty() ? null : new File(clientsFolder, sha);
+    }
+
+    private FileLock acquire(FileChannel channel) throws IOException {
+        FileLock lock = channel.tryLock();
+        if (lock == null) {
+            log.debug("Cache folder locked by another process, waiting on {}", lockFile);
+            console.println("[meterian] Waiting for another build to finish updating the meterian client...");
+            lock = channel.lock();
+        }
+        return lock;
+    }
+
+    private File ready() {
+        // the jar modification time drives the least recently used eviction
+        if (!jarFile.setLastModified(System.currentTimeMillis()))
+            log.debug("Unable to mark {} as recently used", jarFile);
+
         console.println("[meterian] The Meterian client is ready to work");
-        return JAR_FILE;
+        return jarFile;
+    }
+
+    /**
+     * Takes a shared lock on the entry, so that it is not evicted while in use.
+     *
+     * @return false when the entry holds no client, i.e. it has been evicted
+     */
+    private boolean lease(File entry) throws IOException {
+        if (entry == null)
+            return false;
+
+        File jar = new File(entry, JAR_FILENAME);
+        Path path = new File(entry, JAR_FILENAME + LOCK_SUFFIX).toPath();
+        synchronized (LEASES) {
+            Lease lease = LEASES.get(path);
+            if (lease == null) {
+                if (!jar.exists())
+                    return false;
+
+                entry.mkdirs();
+                FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                try {
+                    // waits only while another build evicts or installs the entry
+                    lease = new Lease(channel, channel.lock(0L, Long.MAX_VALUE, true));
+                } catch (IOException | RuntimeException ex) {
+                    channel.close();
+                    throw ex;
+                }
+
+                if (!jar.exists()) {
+                    lease.close();
+                    return false;
+                }
+                LEASES.put(path, lease);
+            }
+
+            lease.count++;
+            leased = path;
+            jarFile = jar;
+            return true;
+        }
+    }
+
+    private void release() {
+        if (leased == null)
+            return;
+
+        synchronized (LEASES) {
+            Lease lease = LEASES.get(leased);
+            if (lease != null && --lease.count == 0) {
+                LEASES.remove(leased);
+                lease.close();
+            }
+            leased = null;
+        }
+    }
+
+    /**
+     * Clients downloaded before the cache had entries are deleted once no build can be running them anymore.
+     */
+    private void deleteLegacyClient() {
+        File legacyJar = new File(config.getClientCacheFolder(), JAR_FILENAME);
+        if (!legacyJar.exists() || System.currentTimeMillis() - legacyJar.lastModified() < LEGACY_CLIENT_GRACE_PERIOD)
+            return;
+
+        try {
+            Files.deleteIfExists(new File(config.getClientCacheFolder(), JAR_FILENAME + ".etag").toPath());
+            Files.deleteIfExists(legacyJar.toPath());
+            log.debug("Deleted legacy client {}", legacyJar);
+        } catch (IOException ex) {
+            log.debug("Unable to delete legacy client {}", legacyJar, ex);
+        }
+    }
+
+    private boolean recentlyChecked() {
+        long ttl = TimeUnit.SECONDS.toMillis(config.getClientCacheTtlInSeconds());
+        if (ttl <= 0 || !etagFile.exists() || !checkedFile.exists())
+            return false;
+
+        long checked;
+        try {
+            checked = Long.parseLong(readContents(checkedFile).trim());
+        } catch (NumberFormatException any) {
+            return false;
+        }
+
+        long elapsed = System.currentTimeMillis() - checked;
+        return elapsed >= 0 && elapsed < ttl;
     }
 
     private URI newURI(String urlstring) throws IOException {
@@ -73,24 +359,261 @@ public class ClientDownloader {
         }
     }
 
-    private void updateFiles(URI uri, File cachedFile, File etagFile) throws IOException{
-        HttpResponse response = client.execute(new HttpGet(uri));
+    private boolean refreshFiles(URI uri, String cachedEtag) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return refreshFilesOnce(uri, cachedEtag);
+            } catch (PartialDownloadException ex) {
+                if (attempt == MAX_DOWNLOAD_ATTEMPTS)
+                    throw ex;
+
+                log.warn("Download of the client interrupted after {} bytes, resuming (attempt {})", partFile.length(), attempt, ex);
+                console.println("[meterian] Download interrupted, resuming...");
+            }
+        }
+    }
+
+    private boolean refreshFilesOnce(URI uri, String cachedEtag) throws IOException {
+        HttpGet request = new HttpGet(uri);
+        // the jar is already compressed, and ranges must refer to the bytes we store
+        request.setHeader(HttpHeaders.ACCEPT_ENCODING, "identity");
+        if (!cachedEtag.isEmpty())
+            request.setHeader(HttpHeaders.IF_NONE_MATCH, cachedEtag);
+
+        String partialEtag = partFile.exists() ? readContents(partEtagFile) : "";
+        long partialLength = partialEtag.isEmpty() ? 0 : partFile.length();
+        if (partialLength > 0) {
+            request.setHeader(HttpHeaders.RANGE, "bytes=" + partialLength + "-");
+            request.setHeader(HttpHeaders.IF_RANGE, partialEtag);
+        }
+
+        HttpResponse response;
+        try (Metrics.Timer timer = summary.getMetrics().timer("meterian_client_request_seconds",
+                "Time to get the response headers for the Meterian client, retries included").start()) {
+            response = client.execute(request);
+        }
+        boolean consumed = false;
         try {
-            if (status(response) == 200) {
-                Files.write(etagFile.toPath(), getEtagValue(response).getBytes(UTF_8));
-                try (BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(cachedFile))) {
-                    response.getEntity().writeTo(out);
-                }
-                log.debug("Successfully updated files");
+            int status = status(response);
+            String sha;
+            if (status == 304) {
+                return false;
+            } else if (status == 200) {
+                console.println("[meterian] Downloading the latest meterian client...");
+                log.debug("Etag not matching, downloading client from url {}", uri);
+                sha = download(response, getEtagValue(response), 0L);
+            } else if (status == 206 && isRangeFrom(response, partialLength)) {
+                console.println("[meterian] Resuming the download of the latest meterian client...");
+                log.debug("Resuming download of client from url {} at byte {}", uri, partialLength);
+                sha = download(response, partialEtag, partialLength);
+            } else if (status == 206 || status == 416) {
+                discardPartialDownload();
+                throw new PartialDownloadException("Unable to resume the download of the Meterian client, response " + response.getStatusLine(), null);
             } else {
                 log.warn("Unable to update files, response {}", response);
+                discardPartialDownload();
                 throw new IOException("Unable to get access to the Meterian client at "+uri);
             }
+
+            consumed = true;
+            install(sha, readContents(partEtagFile));
+            log.debug("Successfully updated files");
+            return true;
         } finally {
-            EntityUtils.consume(response.getEntity());
+            if (consumed)
+                EntityUtils.consume(response.getEntity());
+            else
+                EntityUtils.consumeQuietly(response.getEntity());
+        }
+    }
+
+    /**
+     * @return the SHA-256 of the downloaded client
+     */
+    private String download(HttpResponse response, String etag, long offset) throws IOException {
+        MessageDigest digest = Sha256.newDigest();
+        Files.write(partEtagFile.toPath(), etag.getBytes(UTF_8));
+
+        long position = offset;
+        try (FileChannel out = FileChannel.open(partFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            out.truncate(offset);
+            updateDigest(digest, out, offset);
+
+            HttpEntity entity = response.getEntity();
+            try (ReadableByteChannel in = Channels.newChannel(new DigestInputStream(entity.getContent(), digest))) {
+                long count;
+                while ((count = out.transferFrom(in, position, TRANSFER_CHUNK_SIZE)) > 0)
+                    position += count;
+            } catch (IOException ex) {
+                throw new PartialDownloadException("Download interrupted at byte " + position, ex);
+            } finally {
+                summary.recordBytesDownloaded(position - offset);
+            }
+
+            long expectedLength = entity.getContentLength();
+            if (expectedLength >= 0 && position != offset + expectedLength)
+                throw new PartialDownloadException("Download truncated at byte " + position + " of " + (offset + expectedLength), null);
+        }
+
+        String actualSha = Sha256.toHex(digest.digest());
+        String expectedSha = getExpectedSha(response);
+        if (expectedSha == null) {
+            if (config.isClientChecksumRequired()) {
+                discardPartialDownload();
+                throw new IOException("No SHA-256 published for the Meterian client at " + url + ", pin it with METERIAN_CLIENT_SHA256 to use it");
+            }
+            log.warn("No SHA-256 published for the Meterian client at {}, installing it unverified (SHA-256 {})", url, actualSha);
+            console.println("[meterian] Warning: no checksum available to verify the downloaded Meterian client");
+        } else if (!expectedSha.equalsIgnoreCase(actualSha)) {
+            discardPartialDownload();
+            throw new IOException("Downloaded Meterian client is corrupted, expected SHA-256 " + expectedSha + " but was " + actualSha);
+        }
+
+        log.debug("Downloaded {} bytes, SHA-256 {}", position, actualSha);
+        return actualSha;
+    }
+
+    private void install(String sha, String etag) throws IOException {
+        installEntry(new File(clientsFolder, sha));
+
+        // without an etag a crash between the two writes just triggers a fresh download
+        Files.deleteIfExists(etagFile.toPath());
+        AtomicFiles.write(shaFile, sha.getBytes(UTF_8));
+        AtomicFiles.write(etagFile, etag.getBytes(UTF_8));
+        Files.deleteIfExists(partEtagFile.toPath());
+    }
+
+    private void installEntry(File entry) throws IOException {
+        File jar = new File(entry, JAR_FILENAME);
+        Path path = new File(entry, JAR_FILENAME + LOCK_SUFFIX).toPath();
+        synchronized (LEASES) {
+            // the same client may already be cached, i.e. served by another channel
+            if (!jar.exists()) {
+                entry.mkdirs();
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                     FileLock lock = channel.lock()) {
+                    if (!jar.exists()) {
+                        AtomicFiles.move(partFile, jar);
+                        return;
+                    }
+                }
+            }
+        }
+
+        log.debug("Client {} already cached", entry);
+        Files.deleteIfExists(partFile.toPath());
+    }
+
+    private void discardPartialDownload() throws IOException {
+        Files.deleteIfExists(partFile.toPath());
+        Files.deleteIfExists(partEtagFile.toPath());
+    }
+
+    private void evictLeastRecentlyUsed() {
+        long maxSize = config.getClientCacheMaxSizeInMegabytes() * 1024L * 1024L;
+        File[] entries = clientsFolder.listFiles(File::isDirectory);
+        if (maxSize <= 0 || entries == null)
+            return;
+
+        long totalSize = 0;
+        for (File entry : entries)
+            totalSize += sizeOf(entry);
+
+        Arrays.sort(entries, Comparator.comparingLong(entry -> new File(entry, JAR_FILENAME).lastModified()));
+        for (File entry : entries) {
+            if (totalSize <= maxSize)
+                break;
+
+            long size = sizeOf(entry);
+            if (size > 0 && evict(entry)) {
+                log.debug("Evicted cached client {} ({} bytes)", entry, size);
+                totalSize -= size;
+            }
+        }
+    }
+
+    private boolean evict(File entry) {
+        Path path = new File(entry, JAR_FILENAME + LOCK_SUFFIX).toPath();
+        synchronized (LEASES) {
+            if (LEASES.containsKey(path)) {
+                log.debug("Cached client {} in use, not evicting it", entry);
+                return false;
+            }
+
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock lock = channel.tryLock()) {
+                if (lock == null) {
+                    log.debug("Cached client {} in use, not evicting it", entry);
+                    return false;
+                }
+
+                // the lock file stays, so that a build waiting on it finds the entry empty
+                File[] files = entry.listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        if (!file.toPath().equals(path))
+                            Files.deleteIfExists(file.toPath());
+                    }
+                }
+                return true;
+            } catch (IOException | OverlappingFileLockException ex) {
+                log.debug("Unable to evict cached client {}", entry, ex);
+                return false;
+            }
+        }
+    }
+
+    private long sizeOf(File entry) {
+        long size = 0;
+        File[] files = entry.listFiles();
+        if (files != null) {
+            for (File file : files)
+                size += file.length();
+        }
+        return size;
+    }
+
+    private boolean isRangeFrom(HttpResponse response, long offset) {
+        Header range = response.getFirstHeader(HttpHeaders.CONTENT_RANGE);
+        return offset > 0 && range != null && range.getValue().trim().startsWith("bytes " + offset + "-");
+    }
+
+    private void updateDigest(MessageDigest digest, FileChannel channel, long length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(TRANSFER_CHUNK_SIZE);
+        long position = 0;
+        while (position < length) {
+            buffer.clear();
+            int count = channel.read(buffer, position);
+            if (count < 0)
+                break;
+
+            buffer.flip();
+            digest.update(buffer);
+            position += count;
         }
     }
 
+    private String getExpectedSha(HttpResponse response) {
+        String pinned = config.getClientSha256();
+        if (pinned != null)
+            return pinned.trim();
+
+        Header checksum = response.getFirstHeader("X-Checksum-Sha256");
+        if (checksum != null)
+            return checksum.getValue().trim();
+
+        Header digest = response.getFirstHeader("Digest");
+        if (digest != null) {
+            for (String value : digest.getValue().split(",")) {
+                value = value.trim();
+                if (value.regionMatches(true, 0, "SHA-256=", 0, 8))
+                    return Sha256.toHex(Base64.getDecoder().decode(value.substring(8)));
+            }
+        }
+
+        return null;
+    }
+
     private String readContents(File cachedEtagFile) {
         try {
             return Files.readAllLines(cachedEtagFile.toPath(), UTF_8).get(0);
@@ -99,20 +622,38 @@ public class ClientDownloader {
         }
     }
 
-    private String getEtag(URI uri) throws IOException {
-        final HttpResponse response = client.execute(new HttpHead(uri));
-        try {
-            return status(response) == 200 ? getEtagValue(response) : "";
-        } finally {
-            EntityUtils.consume(response.getEntity());
-        }
-    }
-
     private String getEtagValue(final HttpResponse response) {
-        return response.getFirstHeader("ETag").getValue();
+        Header etag = response.getFirstHeader("ETag");
+        return etag == null ? "" : etag.getValue();
     }
 
     private int status(final HttpResponse response) {
         return response.getStatusLine().getStatusCode();
     }
+
+    private static class Lease {
+        private final FileChannel channel;
+        private final FileLock lock;
+        private int count = 0;
+
+        Lease(FileChannel channel, FileLock lock) {
+            this.channel = channel;
+            this.lock = lock;
+        }
+
+        void close() {
+            try {
+                lock.release();
+                channel.close();
+            } catch (IOException ex) {
+                log.debug("Unable to release the lock on {}", channel, ex);
+            }
+        }
+    }
+
+    private static class PartialDownloadException extends IOException {
+        PartialDownloadException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
 }
@@ -1,8 +1,15 @@
 package io.meterian;
 
-import org.apache.http.client.HttpClient;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.config.RequestConfig.Builder;
+import org.apache.http.client.entity.DeflateInputStreamFactory;
+import org.apache.http.client.entity.GZIPInputStreamFactory;
+import org.apache.http.client.entity.InputStreamFactory;
 import org.apache.http.config.Registry;
 import org.apache.http.config.RegistryBuilder;
 import org.apache.http.conn.HttpClientConnectionManager;
@@ -12,6 +19,9 @@ import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.brotli.dec.BrotliInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class HttpClientFactory {
 
@@ -21,37 +31,71 @@ public class HttpClientFactory {
 
         int getHttpSocketTimeout();
 
+        int getHttpConnectionRequestTimeout();
+
         int getHttpMaxTotalConnections();
 
         int getHttpMaxDefaultConnectionsPerRoute();
 
+        long getHttpConnectionTimeToLive();
+
+        long getHttpMaxIdleTime();
+
+        int getHttpRetryMaxAttempts();
+
+        long getHttpRetryBudget();
+
+        String getHttpProxyHost();
+
+        Integer getHttpProxyPort();
+
         String getHttpUserAgent();
 
     }
 
-    public HttpClient newHttpClient(Config config) {
+    private static final Logger log = LoggerFactory.getLogger(HttpClientFactory.class);
+
+    public CloseableHttpClient newHttpClient(Config config) {
         final HttpClientConnectionManager connectionManager = newConnectionManager(config);
         final RequestConfig requestConfig = newRequestConfig(config);
+        final HttpRetryStrategy retryStrategy = new HttpRetryStrategy(config.getHttpRetryMaxAttempts(), config.getHttpRetryBudget());
 
         final CloseableHttpClient httpClient = HttpClients.custom()
                 .setDefaultRequestConfig(requestConfig)
                 .setConnectionManager(connectionManager)
+                .evictExpiredConnections()
+                .evictIdleConnections(config.getHttpMaxIdleTime(), TimeUnit.MILLISECONDS)
+                .setContentDecoderRegistry(newContentDecoders())
+                .addInterceptorFirst(retryStrategy)
+                .setRetryHandler(retryStrategy)
+                .setServiceUnavailableRetryStrategy(retryStrategy)
                 .setUserAgent(config.getHttpUserAgent())
                 .build();
 
         return httpClient;
     }
 
+    // the keys are advertised in Accept-Encoding, responses are decoded transparently
+    private Map<String, InputStreamFactory> newContentDecoders() {
+        final Map<String, InputStreamFactory> decoders = new LinkedHashMap<>();
+        decoders.put("br", BrotliInputStream::new);
+        decoders.put("gzip", GZIPInputStreamFactory.getInstance());
+        decoders.put("x-gzip", GZIPInputStreamFactory.getInstance());
+        decoders.put("deflate", DeflateInputStreamFactory.getInstance());
+        return decoders;
+    }
+
     private RequestConfig newRequestConfig(Config config) {
         Builder requestConfigBuilder = RequestConfig.custom()
                 .setConnectTimeout(config.getHttpConnectTimeout())
-                .setSocketTimeout(config.getHttpSocketTimeout());
+                .setSocketTimeout(config.getHttpSocketTimeout())
+                .setConnectionRequestTimeout(config.getHttpConnectionRequestTimeout());
 
-//        if (config.getHttpProxyHost() != null && config.getHttpProxyPort() != null) {
-//            HttpHost proxy = new HttpHost(config.getHttpProxyHost(),config.getHttpProxyPort());
-//            print(NEWLINE, "Using http proxy: ", proxy, NEWLINE);
-//            requestConfigBuilder.setProxy(proxy);
-//        }
+        if (config.getHttpProxyHost() != null && config.getHttpProxyPort() != null) {
+            HttpHost proxy = new HttpHost(config.getHttpProxyHost(),config.getHttpProxyPort());
+            log.info("Using http proxy: {}", proxy);
+            requestConfigBuilder.setProxy(proxy);
+        }
 
         final RequestConfig requestConfig = requestConfigBuilder.build();
         return requestConfig;
@@ -63,7 +107,8 @@ public class HttpClientFactory {
                 .register("http", PlainConnectionSocketFactory.getSocketFactory())
                 .build();
 
-        final PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager(registry);
+        final PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager(
+                registry, null, null, null, config.getHttpConnectionTimeToLive(), TimeUnit.MILLISECONDS);
         cm.setMaxTotal(config.getHttpMaxTotalConnections());
         cm.setDefaultMaxPerRoute(config.getHttpMaxDefaultConnectionsPerRoute());
         return cm;
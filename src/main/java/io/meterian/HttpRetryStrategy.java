@@ -0,0 +1,166 @@
+package io.meterian;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.net.ssl.SSLException;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpRequestRetryHandler;
+import org.apache.http.client.ServiceUnavailableRetryStrategy;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Retries failed remote calls with exponential backoff and jitter, within a total time budget.
+ *
+ * GET and HEAD requests are retried on any transient failure. Other methods (i.e. the pull request POST)
+ * are retried only when the server certainly did not process them: the connection could not be
+ * established, the request was not sent, or the server answered 429 or 503.
+ */
+public class HttpRetryStrategy implements HttpRequestRetryHandler, ServiceUnavailableRetryStrategy, HttpRequestInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(HttpRetryStrategy.class);
+
+    private static final String FIRST_ATTEMPT_ATTRIBUTE = "meterian.retry.first-attempt";
+    private static final long BASE_DELAY = 500L;
+    private static final long MAX_DELAY = 30_000L;
+
+    private final int maxAttempts;
+    private final long budget;
+
+    // ServiceUnavailableRetryStrategy asks for the interval right after retryRequest(), on the same thread
+    private final ThreadLocal<Long> nextInterval = new ThreadLocal<>();
+
+    public HttpRetryStrategy(int maxAttempts, long budget) {
+        this.maxAttempts = maxAttempts;
+        this.budget = budget;
+    }
+
+    @Override
+    public void process(HttpRequest request, HttpContext context) {
+        if (context.getAttribute(FIRST_ATTEMPT_ATTRIBUTE) == null)
+            context.setAttribute(FIRST_ATTEMPT_ATTRIBUTE, System.currentTimeMillis());
+    }
+
+    @Override
+    public boolean retryRequest(IOException exception, int executionCount, HttpContext context) {
+        HttpClientContext clientContext = HttpClientContext.adapt(context);
+        if (!isTransient(exception) || !(isIdempotent(clientContext) || wasNotSent(exception, clientContext)))
+            return false;
+
+        long delay = backoff(executionCount);
+        if (!canRetry(executionCount, delay, context))
+            return false;
+
+        log.warn("Request to {} failed ({}), retrying in {} ms (attempt {} of {})",
+                target(clientContext), exception.toString(), delay, executionCount + 1, maxAttempts);
+        try {
+            Thread.sleep(delay);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Override
+    public boolean retryRequest(HttpResponse response, int executionCount, HttpContext context) {
+        int status = response.getStatusLine().getStatusCode();
+        boolean refused = status == 429 || status == 503;
+        boolean gateway = status == 502 || status == 504;
+        if (!refused && !(gateway && isIdempotent(HttpClientContext.adapt(context))))
+            return false;
+
+        long delay = Math.max(backoff(executionCount), retryAfter(response));
+        if (!canRetry(executionCount, delay, context))
+            return false;
+
+        log.warn("Request to {} answered {}, retrying in {} ms (attempt {} of {})",
+                target(HttpClientContext.adapt(context)), response.getStatusLine(), delay, executionCount + 1, maxAttempts);
+        nextInterval.set(delay);
+        return true;
+    }
+
+    @Override
+    public long getRetryInterval() {
+        Long interval = nextInterval.get();
+        nextInterval.remove();
+        return interval == null ? BASE_DELAY : interval;
+    }
+
+    private boolean canRetry(int executionCount, long delay, HttpContext context) {
+        if (executionCount >= maxAttempts)
+            return false;
+
+        Long firstAttempt = (Long) context.getAttribute(FIRST_ATTEMPT_ATTRIBUTE);
+        long elapsed = firstAttempt == null ? 0 : System.currentTimeMillis() - firstAttempt;
+        return elapsed + delay <= budget;
+    }
+
+    private long backoff(int executionCount) {
+        long ceiling = Math.min(MAX_DELAY, BASE_DELAY << Math.min(executionCount - 1, 16));
+        return ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+    }
+
+    private long retryAfter(HttpResponse response) {
+        Header header = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+        if (header == null)
+            return 0L;
+
+        String value = header.getValue().trim();
+        try {
+            return Long.parseLong(value) * 1000L;
+        } catch (NumberFormatException notSeconds) {
+            Date date = DateUtils.parseDate(value);
+            return date == null ? 0L : Math.max(0L, date.getTime() - System.currentTimeMillis());
+        }
+    }
+
+    private boolean isTransient(IOException exception) {
+        if (exception instanceof SSLException)
+            return false;
+
+        // other interruptions mean the call was cancelled
+        if (exception instanceof InterruptedIOException)
+            return exception instanceof SocketTimeoutException || exception instanceof ConnectTimeoutException;
+
+        return true;
+    }
+
+    private boolean wasNotSent(IOException exception, HttpClientContext context) {
+        return exception instanceof ConnectException
+                || exception instanceof ConnectTimeoutException
+                || exception instanceof NoRouteToHostException
+                || exception instanceof UnknownHostException
+                || !context.isRequestSent();
+    }
+
+    private boolean isIdempotent(HttpClientContext context) {
+        HttpRequest request = context.getRequest();
+        if (request == null)
+            return false;
+
+        String method = request.getRequestLine().getMethod();
+        return "GET".equalsIgnoreCase(method) || "HEAD".equalsIgnoreCase(method);
+    }
+
+    private String target(HttpClientContext context) {
+        HttpRequest request = context.getRequest();
+        return request == null ? "?" : request.getRequestLine().getUri();
+    }
+}
@@ -1,39 +1,218 @@
 package io.meterian;
 
 import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+/**
+ * Writes to the console from a single background thread, so that slow log collectors do not slow down
+ * the threads reading the client output. Messages are queued, written in batches and flushed when enough
+ * text is pending or when the queue goes quiet. When the queue is full writers wait, so nothing is lost;
+ * {@link #flush()} and {@link #close()} return once everything queued before them has been written.
+ */
 public class MeterianConsole {
 
-    private Logger logger;
-    private PrintStream console;
+    private static final Logger log = LoggerFactory.getLogger(MeterianConsole.class);
+
+    private static final int QUEUE_CAPACITY = 8 * 1024;
+    private static final int FLUSH_SIZE = 16 * 1024;
+    private static final long FLUSH_INTERVAL_MILLIS = 200;
+    private static final String NEWLINE = System.lineSeparator();
+
+    private final PrintStream console;
+    private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    // shared by the writers, exclusive for close, so that nothing is queued after the last drain
+    private final ReadWriteLock closing = new ReentrantReadWriteLock();
+    private final Thread writer;
+
+    private volatile boolean closed = false;
 
     public MeterianConsole(PrintStream console) {
         this.console = console;
+        this.writer = new Thread(this::drain, "meterian-console");
+        this.writer.setDaemon(true);
+        this.writer.start();
     }
 
     public void println(String msg) {
-        console.print(msg);
+        enqueue(msg + NEWLINE);
+    }
+
+    /**
+     * Prints the prefix and the line, copied as the line may be a buffer reused once this returns.
+     */
+    public void println(String prefix, CharSequence line) {
+        enqueue(new PrefixedLine(prefix, new StringBuilder(line)));
     }
 
     public void warn(String msg) {
-        logger.warn(msg);
+        log.warn(msg);
     }
 
     public void print(String msg) {
-        console.println((msg));
+        enqueue(msg);
     }
 
     public void flush() {
-        console.flush();
+        Barrier barrier = new Barrier(false);
+        if (enqueue(barrier))
+            barrier.await();
+        else
+            console.flush();
     }
 
     public void close() {
-        console.close();
+        closing.writeLock().lock();
+        try {
+            if (closed)
+                return;
+
+            closed = true;
+            Barrier barrier = new Barrier(true);
+            if (put(barrier))
+                barrier.await();
+            else
+                console.close();
+        } finally {
+            closing.writeLock().unlock();
+        }
     }
 
     public void printStackTrace(Exception ex) {
-        ex.printStackTrace(console);
+        StringWriter trace = new StringWriter();
+        ex.printStackTrace(new PrintWriter(trace));
+        enqueue(trace.toString());
+    }
+
+    private boolean enqueue(Object item) {
+        closing.readLock().lock();
+        try {
+            if (!closed && put(item))
+                return true;
+        } finally {
+            closing.readLock().unlock();
+        }
+
+        if (item instanceof String)
+            console.print((String) item);
+        else if (item instanceof PrefixedLine)
+            console.print(((PrefixedLine) item).appendTo(new StringBuilder()));
+        return false;
+    }
+
+    private boolean put(Object item) {
+        try {
+            queue.put(item);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void drain() {
+        List<Object> batch = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        int unflushed = 0;
+
+        while (true) {
+            Object first;
+            try {
+                first = queue.poll(FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // only close() stops the writer, as anything queued must be written
+                continue;
+            }
+
+            if (first == null) {
+                if (unflushed > 0) {
+                    console.flush();
+                    unflushed = 0;
+                }
+                continue;
+            }
+
+            batch.add(first);
+            queue.drainTo(batch);
+            for (Object item : batch) {
+                if (item instanceof Barrier) {
+                    Barrier barrier = (Barrier) item;
+                    write(text);
+                    console.flush();
+                    unflushed = 0;
+                    if (barrier.closing) {
+                        console.close();
+                        barrier.release();
+                        return;
+                    }
+                    barrier.release();
+                } else if (item instanceof PrefixedLine) {
+                    ((PrefixedLine) item).appendTo(text);
+                } else {
+                    text.append((String) item);
+                }
+            }
+            batch.clear();
+
+            unflushed += text.length();
+            write(text);
+            if (unflushed >= FLUSH_SIZE) {
+                console.flush();
+                unflushed = 0;
+            }
+        }
+    }
+
+    private void write(StringBuilder text) {
+        if (text.length() > 0) {
+            console.print(text);
+            text.setLength(0);
+        }
+    }
+
+    private static class PrefixedLine {
+        private final String prefix;
+        private final StringBuilder line;
+
+        PrefixedLine(String prefix, StringBuilder line) {
+            this.prefix = prefix;
+            this.line = line;
+        }
+
+        StringBuilder appendTo(StringBuilder text) {
+            return text.append(prefix).append(line).append(NEWLINE);
+        }
+    }
+
+    private static class Barrier {
+        private final boolean closing;
+        private final CountDownLatch latch = new CountDownLatch(1);
+
+        Barrier(boolean closing) {
+            this.closing = closing;
+        }
+
+        void release() {
+            latch.countDown();
+        }
+
+        void await() {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 }
@@ -0,0 +1,235 @@
+package io.meterian;
+
+import com.meterian.common.io.AtomicFiles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A minimal metrics registry (counters, histograms and timers) exported in the Prometheus text format.
+ * Each run owns its registry, see {@link RunSummary#getMetrics()}.
+ *
+ * Metrics are created on first use and looked up by name and labels, given as name/value pairs:
+ * <pre>
+ * try (Metrics.Timer timer = metrics.timer("meterian_git_operation_seconds", "...", "operation", "push").start()) {
+ *     ...
+ * }
+ * </pre>
+ */
+public class Metrics {
+
+    public static interface Config {
+
+        File getMetricsFile();
+
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(Metrics.class);
+
+    private static final double[] SECONDS_BUCKETS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120, 300, 600};
+
+    private final ConcurrentMap<String, Family> families = new ConcurrentHashMap<>();
+
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) family(name, help, "counter").child(labels, () -> new Counter());
+    }
+
+    public Histogram histogram(String name, String help, double[] buckets, String... labels) {
+        return (Histogram) family(name, help, "histogram").child(labels, () -> new Histogram(buckets));
+    }
+
+    public Histogram timer(String name, String help, String... labels) {
+        return histogram(name, help, SECONDS_BUCKETS, labels);
+    }
+
+    public void write(File file) {
+        if (file == null)
+            return;
+
+        try {
+            AtomicFiles.write(file, out -> {
+                Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+                writeTo(writer);
+                writer.flush();
+            });
+            log.info("Metrics written to {}", file);
+        } catch (IOException ex) {
+            log.warn("Unable to write the metrics to {}", file, ex);
+        }
+    }
+
+    public void writeTo(Writer out) throws IOException {
+        for (Family family : new TreeMap<>(families).values())
+            family.writeTo(out);
+    }
+
+    private Family family(String name, String help, String type) {
+        Family family = families.computeIfAbsent(name, key -> new Family(name, help, type));
+        if (!family.type.equals(type))
+            throw new IllegalArgumentException("Metric " + name + " is a " + family.type + ", not a " + type);
+        return family;
+    }
+
+    private static String labels(String[] labels) {
+        if (labels.length % 2 != 0)
+            throw new IllegalArgumentException("Labels must be name/value pairs");
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            text.append(text.length() == 0 ? "" : ",")
+                .append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+        }
+        return text.toString();
+    }
+
+    private static String escape(String value) {
+        return String.valueOf(value).replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String format(double value) {
+        if (value == Double.POSITIVE_INFINITY)
+            return "+Inf";
+        if (value == Math.rint(value) && Math.abs(value) < 1e15)
+            return Long.toString((long) value);
+        return String.format(Locale.ROOT, "%s", value);
+    }
+
+    private static String series(String name, String labels, String extraLabel) {
+        String all = labels.isEmpty() ? extraLabel : (extraLabel.isEmpty() ? labels : labels + "," + extraLabel);
+        return all.isEmpty() ? name : name + "{" + all + "}";
+    }
+
+    private static interface Metric {
+        void writeTo(Writer out, String name, String labels) throws IOException;
+    }
+
+    private static interface MetricFactory {
+        Metric create();
+    }
+
+    private static class Family {
+        private final String name;
+        private final String help;
+        private final String type;
+        private final ConcurrentMap<String, Metric> children = new ConcurrentHashMap<>();
+
+        Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+
+        Metric child(String[] labels, MetricFactory factory) {
+            return children.computeIfAbsent(labels(labels), key -> factory.create());
+        }
+
+        void writeTo(Writer out) throws IOException {
+            out.write("# HELP " + name + " " + help.replace("\\", "\\\\").replace("\n", "\\n") + "\n");
+            out.write("# TYPE " + name + " " + type + "\n");
+            for (Map.Entry<String, Metric> child : new TreeMap<>(children).entrySet())
+                child.getValue().writeTo(out, name, child.getKey());
+        }
+    }
+
+    public static class Counter implements Metric {
+        private final DoubleAdder value = new DoubleAdder();
+
+        public void inc() {
+            value.add(1);
+        }
+
+        public void inc(double amount) {
+            if (amount < 0)
+                throw new IllegalArgumentException("Counters can only increase");
+            value.add(amount);
+        }
+
+        public double get() {
+            return value.sum();
+        }
+
+        @Override
+        public void writeTo(Writer out, String name, String labels) throws IOException {
+            out.write(series(name, labels, "") + " " + format(get()) + "\n");
+        }
+    }
+
+    public static class Histogram implements Metric {
+        private final double[] buckets;
+        private final LongAdder[] counts;
+        private final LongAdder count = new LongAdder();
+        private final DoubleAdder sum = new DoubleAdder();
+
+        Histogram(double[] buckets) {
+            this.buckets = buckets.clone();
+            this.counts = new LongAdder[buckets.length];
+            for (int i = 0; i < counts.length; i++)
+                counts[i] = new LongAdder();
+        }
+
+        public void observe(double value) {
+            for (int i = 0; i < buckets.length; i++) {
+                if (value <= buckets[i]) {
+                    counts[i].increment();
+                    break;
+                }
+            }
+            count.increment();
+            sum.add(value);
+        }
+
+        public Timer start() {
+            return new Timer(this);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public double getSum() {
+            return sum.sum();
+        }
+
+        @Override
+        public void writeTo(Writer out, String name, String labels) throws IOException {
+            long cumulative = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                cumulative += counts[i].sum();
+                out.write(series(name + "_bucket", labels, "le=\"" + format(buckets[i]) + "\"") + " " + cumulative + "\n");
+            }
+            long total = count.sum();
+            out.write(series(name + "_bucket", labels, "le=\"+Inf\"") + " " + total + "\n");
+            out.write(series(name + "_sum", labels, "") + " " + format(sum.sum()) + "\n");
+            out.write(series(name + "_count", labels, "") + " " + total + "\n");
+        }
+    }
+
+    /**
+     * Observes the seconds elapsed since its creation when closed.
+     */
+    public static class Timer implements AutoCloseable {
+        private final Histogram histogram;
+        private final long started = System.nanoTime();
+
+        Timer(Histogram histogram) {
+            this.histogram = histogram;
+        }
+
+        @Override
+        public void close() {
+            histogram.observe((System.nanoTime() - started) / 1e9);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package io.meterian;
+
+import com.google.gson.GsonBuilder;
+import com.meterian.common.io.AtomicFiles;
+import com.google.gson.JsonObject;
+import io.meterian.core.Meterian;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects what happened during a run (time spent in each phase, client cache outcome, bytes downloaded,
+ * and the analysis result) and writes it as a JSON file, so that dashboards can track where the build time
+ * goes without parsing the logs.
+ */
+public class RunSummary {
+
+    public static interface Config {
+
+        File getRunSummaryFile();
+
+    }
+
+    public static final String CLIENT_DOWNLOAD = "client_download";
+    public static final String PROCESS_LAUNCH = "process_launch";
+    public static final String ANALYSIS = "analysis";
+    public static final String GIT = "git";
+    public static final String PULL_REQUEST = "pull_request";
+
+    public static final String CACHE_HIT = "hit";
+    public static final String CACHE_REVALIDATED = "revalidated";
+    public static final String CACHE_MISS = "miss";
+    public static final String CACHE_STALE = "stale";
+
+    private static final Logger log = LoggerFactory.getLogger(RunSummary.class);
+
+    private final Metrics metrics;
+    private final Instant startedAt = Instant.now();
+    private final long started = System.nanoTime();
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+
+    private String clientCache;
+    private long bytesDownloaded;
+    private Meterian.Result result;
+    private Integer exitCode;
+
+    public RunSummary() {
+        this(new Metrics());
+    }
+
+    public RunSummary(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Adds the time elapsed since the given System.nanoTime() to the phase, as some phases
+     * (i.e. git) are made of several steps.
+     */
+    public synchronized void recordPhase(String phase, long startedNanos) {
+        phases.merge(phase, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos), Long::sum);
+    }
+
+    public synchronized void recordClientCache(String outcome) {
+        this.clientCache = outcome;
+        metrics.counter("meterian_client_cache_total", "Loads of the Meterian client by cache outcome", "outcome", outcome).inc();
+    }
+
+    public synchronized void recordBytesDownloaded(long bytes) {
+        this.bytesDownloaded += bytes;
+        metrics.counter("meterian_client_downloaded_bytes_total", "Bytes of the Meterian client downloaded").inc(bytes);
+    }
+
+    public synchronized void recordResult(Meterian.Result result) {
+        this.result = result;
+    }
+
+    /**
+     * Ends the run, observing each phase once with its total time.
+     */
+    public synchronized void recordExit(int exitCode) {
+        this.exitCode = exitCode;
+        for (Map.Entry<String, Long> phase : phases.entrySet())
+            metrics.timer("meterian_phase_seconds", "Time spent in each phase of the run", "phase", phase.getKey()).observe(phase.getValue() / 1e3);
+        metrics.timer("meterian_run_seconds", "Total time of the run").observe((System.nanoTime() - started) / 1e9);
+        metrics.counter("meterian_runs_total", "Runs by exit code", "exit_code", Integer.toString(exitCode)).inc();
+    }
+
+    public synchronized Long getPhase(String phase) {
+        return phases.get(phase);
+    }
+
+    public synchronized String getClientCache() {
+        return clientCache;
+    }
+
+    public synchronized long getBytesDownloaded() {
+        return bytesDownloaded;
+    }
+
+    public synchronized String toJson() {
+        JsonObject timings = new JsonObject();
+        for (Map.Entry<String, Long> phase : phases.entrySet())
+            timings.addProperty(phase.getKey(), phase.getValue());
+
+        JsonObject json = new JsonObject();
+        json.addProperty("started_at", startedAt.toString());
+        json.addProperty("total_ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        json.add("phases_ms", timings);
+        json.addProperty("client_cache", clientCache);
+        json.addProperty("bytes_downloaded", bytesDownloaded);
+        if (exitCode != null)
+            json.addProperty("exit_code", exitCode);
+        if (result != null) {
+            if (exitCode == null)
+                json.addProperty("exit_code", result.exitCode);
+            json.addProperty("report_url", result.reportUrl == null ? null : result.reportUrl.toString());
+            json.addProperty("project_uuid", result.projectUUID == null ? null : result.projectUUID.toString());
+            json.addProperty("project_branch", result.projectBranch);
+        }
+
+        return new GsonBuilder().serializeNulls().setPrettyPrinting().create().toJson(json);
+    }
+
+    public void write(File file) {
+        if (file == null)
+            return;
+
+        try {
+            AtomicFiles.write(file, toJson().getBytes(StandardCharsets.UTF_8));
+            log.info("Run summary written to {}", file);
+        } catch (IOException ex) {
+            log.warn("Unable to write the run summary to {}", file, ex);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package io.meterian.bitbucket;
+
+import com.google.common.io.ByteStreams;
+import com.meterian.common.io.AtomicFiles;
+import com.meterian.common.io.Sha256;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * On-disk cache of Bitbucket GET responses, revalidated with their ETag.
+ *
+ * Each entry is a single file, named after the url and the credentials used, holding the ETag on
+ * the first line followed by the response body. Entries are replaced atomically, expire after
+ * a maximum age and the least recently stored ones are evicted when the cache exceeds its size.
+ */
+public class BitbucketResponseCache {
+
+    public static interface Config {
+
+        File getBitbucketCacheFolder();
+
+        long getBitbucketCacheMaxSizeInMegabytes();
+
+        long getBitbucketCacheMaxAgeInSeconds();
+
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(BitbucketResponseCache.class);
+
+    private static final String ENTRY_SUFFIX = ".entry";
+
+    private final File folder;
+    private final long maxSize;
+    private final long maxAge;
+
+    public BitbucketResponseCache(Config config) {
+        this.folder = config.getBitbucketCacheFolder();
+        this.maxSize = config.getBitbucketCacheMaxSizeInMegabytes() * 1024L * 1024L;
+        this.maxAge = TimeUnit.SECONDS.toMillis(config.getBitbucketCacheMaxAgeInSeconds());
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0 && maxAge > 0;
+    }
+
+    public String key(String url, String user, String password) {
+        String credentials = Sha256.of(String.valueOf(user) + ":" + String.valueOf(password));
+        return Sha256.of(url + "\n" + credentials);
+    }
+
+    public String etag(String key) {
+        File entry = entry(key);
+        if (!isEnabled() || !entry.exists())
+            return null;
+
+        if (System.currentTimeMillis() - entry.lastModified() > maxAge) {
+            delete(entry);
+            return null;
+        }
+
+        try (InputStream in = new BufferedInputStream(new FileInputStream(entry))) {
+            return readLine(in);
+        } catch (IOException ex) {
+            log.debug("Unable to read cached response {}", entry, ex);
+            return null;
+        }
+    }
+
+    public InputStream open(String key) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(entry(key)));
+        try {
+            readLine(in);
+            return in;
+        } catch (IOException ex) {
+            in.close();
+            throw ex;
+        }
+    }
+
+    public void touch(String key) {
+        if (!entry(key).setLastModified(System.currentTimeMillis()))
+            log.debug("Unable to refresh cached response {}", key);
+    }
+
+    public void store(String key, String etag, InputStream body) throws IOException {
+        AtomicFiles.write(entry(key), out -> {
+            out.write(etag.getBytes(StandardCharsets.UTF_8));
+            out.write('\n');
+            ByteStreams.copy(body, out);
+        });
+
+        evict();
+    }
+
+    private void evict() {
+        File[] entries = folder.listFiles((dir, name) -> name.endsWith(ENTRY_SUFFIX));
+        if (entries == null)
+            return;
+
+        long now = System.currentTimeMillis();
+        long totalSize = 0;
+        for (File entry : entries)
+            totalSize += entry.length();
+
+        Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+        for (File entry : entries) {
+            boolean expired = now - entry.lastModified() > maxAge;
+            if (!expired && totalSize <= maxSize)
+                break;
+
+            long size = entry.length();
+            if (delete(entry))
+                totalSize -= size;
+        }
+    }
+
+    private boolean delete(File entry) {
+        try {
+            return Files.deleteIfExists(entry.toPath());
+        } catch (IOException ex) {
+            log.debug("Unable to delete cached response {}", entry, ex);
+            return false;
+        }
+    }
+
+    private String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c == -1)
+                throw new IOException("Truncated cache entry");
+            line.write(c);
+        }
+        return new String(line.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private File entry(String key) {
+        return new File(folder, key + ENTRY_SUFFIX);
+    }
+}
@@ -0,0 +1,154 @@
+package io.meterian.bitbucket;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Pulls the few fields we need out of Bitbucket REST responses while streaming them,
+ * skipping everything else without building a document tree.
+ */
+public class BitbucketResponseParser {
+
+    public static class PullRequest {
+        public final String id;
+        public final String branchName;
+        public final OffsetDateTime createdOn;
+
+        public PullRequest(String id, String branchName, OffsetDateTime createdOn) {
+            this.id = id;
+            this.branchName = branchName;
+            this.createdOn = createdOn;
+        }
+
+        @Override
+        public String toString() {
+            return "[id=" + id + ", branchName=" + branchName + ", createdOn=" + createdOn + "]";
+        }
+    }
+
+    public static class PullRequestsPage {
+        public final List<PullRequest> values;
+        public final String next;
+
+        public PullRequestsPage(List<PullRequest> values, String next) {
+            this.values = Collections.unmodifiableList(values);
+            this.next = next;
+        }
+    }
+
+    public PullRequestsPage parsePullRequests(InputStream body) throws IOException {
+        List<PullRequest> values = new ArrayList<>();
+        String next = null;
+
+        try (JsonReader reader = newReader(body)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("next".equals(name)) {
+                    next = nextStringOrNull(reader);
+                } else if ("values".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        values.add(parsePullRequest(reader));
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+
+        return new PullRequestsPage(values, next);
+    }
+
+    public Optional<OffsetDateTime> parseBranchDate(InputStream body) throws IOException {
+        String date = null;
+
+        try (JsonReader reader = newReader(body)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("target".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if ("date".equals(reader.nextName()))
+                            date = nextStringOrNull(reader);
+                        else
+                            reader.skipValue();
+                    }
+                    reader.endObject();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+
+        return date == null ? Optional.empty() : Optional.of(OffsetDateTime.parse(date));
+    }
+
+    private PullRequest parsePullRequest(JsonReader reader) throws IOException {
+        String id = null;
+        String branchName = null;
+        String createdOn = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("id".equals(name)) {
+                id = nextStringOrNull(reader);
+            } else if ("created_on".equals(name)) {
+                createdOn = nextStringOrNull(reader);
+            } else if ("source".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if ("branch".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_OBJECT)
+                        branchName = parseName(reader);
+                    else
+                        reader.skipValue();
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new PullRequest(id, branchName, createdOn == null ? null : OffsetDateTime.parse(createdOn));
+    }
+
+    private String parseName(JsonReader reader) throws IOException {
+        String name = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("name".equals(reader.nextName()))
+                name = nextStringOrNull(reader);
+            else
+                reader.skipValue();
+        }
+        reader.endObject();
+        return name;
+    }
+
+    private String nextStringOrNull(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    private JsonReader newReader(InputStream body) {
+        return new JsonReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+    }
+}
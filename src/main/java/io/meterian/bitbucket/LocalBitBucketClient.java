@@ -1,18 +1,36 @@
 package io.meterian.bitbucket;
 
-import com.mashape.unirest.http.HttpResponse;
-import com.mashape.unirest.http.JsonNode;
-import com.mashape.unirest.http.Unirest;
-import com.mashape.unirest.http.exceptions.UnirestException;
+import com.google.common.io.CharStreams;
+import io.meterian.HttpClientFactory;
 import io.meterian.MeterianConsole;
-import org.json.JSONArray;
-import org.json.JSONObject;
+import io.meterian.Metrics;
+import io.meterian.bitbucket.BitbucketResponseParser.PullRequest;
+import io.meterian.bitbucket.BitbucketResponseParser.PullRequestsPage;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.time.LocalDateTime;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URISyntaxException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Base64;
 import java.util.List;
 import java.util.Optional;
 
@@ -41,22 +59,38 @@ public class LocalBitBucketClient {
     private static final String PULL_REQUEST_CREATION_ACTION = "Creating pull request for org: %s, repo: %s, branch: %s";
     private static final String PULL_REQUEST_FETCHING_ERROR = "Error occurred while fetching pull requests due to: %s";
 
+    private static final String PULL_REQUEST_FIELDS = "next,values.id,values.source.branch.name,values.created_on";
+    private static final int PAGE_LENGTH = 50;
+
     private static final boolean PULL_REQUEST_FOR_BRANCH_FOUND = true;
     private static final boolean PULL_REQUEST_FOR_BRANCH_NOT_FOUND = false;
 
+    private final HttpClient httpClient;
+    private final BitbucketResponseCache responseCache;
+    private final String apiUrl;
+    private final BitbucketResponseParser parser = new BitbucketResponseParser();
     private String bitbucketUser;
     private String bitbucketAppPassword;
     private final String repoName;
     private final MeterianConsole console;
+    private final Metrics metrics;
 
-    public LocalBitBucketClient(String bitbucketUser,
+    public LocalBitBucketClient(HttpClient httpClient,
+                                BitbucketResponseCache responseCache,
+                                String apiUrl,
+                                String bitbucketUser,
                                 String bitbucketAppPassword,
                                 String repoName,
-                                MeterianConsole console) {
+                                MeterianConsole console,
+                                Metrics metrics) {
+        this.httpClient = httpClient;
+        this.responseCache = responseCache;
+        this.apiUrl = apiUrl;
         this.bitbucketUser = bitbucketUser;
         this.bitbucketAppPassword = bitbucketAppPassword;
         this.repoName = repoName;
         this.console = console;
+        this.metrics = metrics;
 
         if (bitbucketUser == null || bitbucketUser.isEmpty()) {
             log.warn(METERIAN_BITBUCKET_USER_ABSENT_WARNING);
@@ -95,32 +129,27 @@ public class LocalBitBucketClient {
     private String performPullRequest(String repository,
                                       String branchName,
                                       String title,
-                                      String body) throws UnirestException {
+                                      String body) throws IOException {
         // See docs at https://developer.atlassian.com/bitbucket/api/2/reference/resource/repositories/%7Busername%7D/%7Brepo_slug%7D/pullrequests#post
-        HttpResponse<String> response =
-                Unirest.post(String.format(
-                        "https://api.bitbucket.org/2.0/repositories/%s/pullrequests",
-                        repository))
-                        .basicAuth(bitbucketUser, bitbucketAppPassword)
-                        .header("content-type", "application/json")
-                        .header("accept", "application/json")
-                        .body(String.format("{\n" +
-                                        "        \"title\": \"%s\",\n" +
-                                        "        \"summary\": {\n" +
-                                        "            \"raw\": \"%s\"\n" +
-                                        "        },\n" +
-                                        "        \"source\": {\n" +
-                                        "            \"branch\": {\n" +
-                                        "                \"name\": \"%s\"\n" +
-                                        "            }\n" +
-                                        "        }\n" +
-                                        "    }", title,
-                                body,
-                                branchName)
-                        )
-                        .asString();
-
-        return response.getBody();
+        HttpPost request = new HttpPost(HttpClientFactory.makeUrl(apiUrl, String.format(
+                "repositories/%s/pullrequests",
+                repository)));
+        request.setEntity(new StringEntity(String.format("{\n" +
+                                "        \"title\": \"%s\",\n" +
+                                "        \"summary\": {\n" +
+                                "            \"raw\": \"%s\"\n" +
+                                "        },\n" +
+                                "        \"source\": {\n" +
+                                "            \"branch\": {\n" +
+                                "                \"name\": \"%s\"\n" +
+                                "            }\n" +
+                                "        }\n" +
+                                "    }", title,
+                        body,
+                        branchName),
+                ContentType.APPLICATION_JSON));
+
+        return execute(request, this::readString).value;
     }
 
     private boolean pullRequestExists(String branchName) {
@@ -147,68 +176,51 @@ public class LocalBitBucketClient {
         }
     }
 
-    public String getOpenPullRequestIdForBranch(String bitbucketRepoName, String branchName) throws UnirestException {
-        LocalDateTime branchCreationDateTime = getBranchCreationDateTime(branchName);
-        List pullRequests = getAllOpenPullRequests(bitbucketRepoName);
-        Optional foundPullRequest = pullRequests
+    public String getOpenPullRequestIdForBranch(String bitbucketRepoName, String branchName) throws IOException {
+        Optional<OffsetDateTime> branchCreationDateTime = getBranchCreationDateTime(branchName);
+        List<PullRequest> pullRequests = getOpenPullRequestsForBranch(bitbucketRepoName, branchName);
+        Optional<PullRequest> foundPullRequest = pullRequests
                 .stream()
                 .filter(eachPullRequest ->
                     pullRequestForBranchWasCreatedJustNow(
                             branchName,
-                            (JSONObject) eachPullRequest,
+                            eachPullRequest,
                             branchCreationDateTime)
                 ).findFirst();
 
         if (foundPullRequest.isPresent()) {
-            JSONObject pullRequestAsJsonObject = (JSONObject) foundPullRequest.get();
-            return pullRequestAsJsonObject.get("id").toString();
+            return foundPullRequest.get().id;
         }
         return "";
     }
 
-    private LocalDateTime getBranchCreationDateTime(String branchName) throws UnirestException {
-        HttpResponse<JsonNode> response =
-                Unirest.get(String.format(
-                        "https://api.bitbucket.org/2.0/repositories/%s/%s/refs/branches",
-                        bitbucketUser,
-                        repoName))
-                        .asJson();
-
-        if (response.getStatus() == 200) {
-            JsonNode body = response.getBody();
-
-            JSONArray fetchedBranches = body.getObject().getJSONArray("values");
-            for (int index = 0; index < fetchedBranches.length(); index++) {
-                String fetchedBranchName = fetchedBranches.getJSONObject(index).get("name").toString();
-
-                if (fetchedBranchName.equals(branchName)) {
-                    String fetchedBranchNameCreationDate =
-                            fetchedBranches.getJSONObject(index)
-                                    .getJSONObject("target")
-                                    .get("date").toString();
-                    return LocalDateTime.parse(dropTimeZoneStringIn(fetchedBranchNameCreationDate));
-                }
-            }
+    private Optional<OffsetDateTime> getBranchCreationDateTime(String branchName) throws IOException {
+        // See docs at https://developer.atlassian.com/bitbucket/api/2/reference/resource/repositories/%7Busername%7D/%7Brepo_slug%7D/refs/branches/%7Bname%7D
+        Response<Optional<OffsetDateTime>> response = execute(new HttpGet(HttpClientFactory.makeUrl(apiUrl, String.format(
+                "repositories/%s/%s/refs/branches/%s?fields=target.date",
+                bitbucketUser,
+                repoName,
+                URLEncoder.encode(branchName, "UTF-8").replace("+", "%20")))),
+                parser::parseBranchDate);
+
+        if (response.status == 200) {
+            return response.value;
         } else {
             log.warn(String.format("Error occurred while fetching information for branch %s, due to %s",
-                    branchName, response.getBody()));
+                    branchName, response.error));
         }
 
-        return LocalDateTime.now();
+        return Optional.empty();
     }
 
     private boolean pullRequestForBranchWasCreatedJustNow(String branchName,
-                                                          JSONObject eachPullRequest,
-                                                          LocalDateTime referenceDateTime) {
-        boolean branchNameMatches = eachPullRequest
-                .getJSONObject("source")
-                .getJSONObject("branch")
-                .get("name")
-                .equals(branchName);
-        String referenceDateTimeAsString =
-                dropTimeZoneStringIn(eachPullRequest.get("created_on").toString());
-        LocalDateTime localDateTime = LocalDateTime.parse(referenceDateTimeAsString);
-        boolean createdAfterReferenceDateTime = localDateTime.isAfter(referenceDateTime);
+                                                          PullRequest eachPullRequest,
+                                                          Optional<OffsetDateTime> referenceDateTime) {
+        boolean branchNameMatches = branchName.equals(eachPullRequest.branchName);
+        // without a reference, any open pull request for the branch counts as existing
+        boolean createdAfterReferenceDateTime = referenceDateTime
+                .map(reference -> eachPullRequest.createdOn != null && eachPullRequest.createdOn.isAfter(reference))
+                .orElse(true);
 
         if (branchNameMatches && (! createdAfterReferenceDateTime) ) {
             log.warn(String.format("REST API call has returned incorrect OPEN pull requests for branch %s", branchName));
@@ -217,38 +229,130 @@ public class LocalBitBucketClient {
         return branchNameMatches && createdAfterReferenceDateTime;
     }
 
-    private String dropTimeZoneStringIn(String referenceDateTimeAsString) {
-        int foundTimeZone = referenceDateTimeAsString.indexOf("+");
-        if (foundTimeZone > 0) {
-            referenceDateTimeAsString = referenceDateTimeAsString.substring(0, foundTimeZone);
+    private List<PullRequest> getOpenPullRequestsForBranch(String bitbucketRepoName, String branchName) throws IOException {
+        // See docs at https://developer.atlassian.com/bitbucket/api/2/reference/meta/filtering
+        String query = String.format("source.branch.name=\"%s\" AND state=\"OPEN\"",
+                branchName.replace("\\", "\\\\").replace("\"", "\\\""));
+        String url;
+        try {
+            url = new URIBuilder(HttpClientFactory.makeUrl(apiUrl, String.format(
+                    "repositories/%s/%s/pullrequests",
+                    bitbucketUser,
+                    bitbucketRepoName)))
+                    .addParameter("q", query)
+                    .addParameter("fields", PULL_REQUEST_FIELDS)
+                    .addParameter("pagelen", Integer.toString(PAGE_LENGTH))
+                    .build()
+                    .toString();
+        } catch (URISyntaxException ex) {
+            throw new IOException(ex);
         }
-        return referenceDateTimeAsString;
-    }
 
-    private List getAllOpenPullRequests(String bitbucketRepoName) throws UnirestException {
-        HttpResponse<JsonNode> response =
-                Unirest.get(String.format(
-                        "https://api.bitbucket.org/2.0/repositories/%s/%s/pullrequests?state=%s",
-                        bitbucketUser,
-                        bitbucketRepoName,
-                        "OPEN"))
-                        .asJson();
+        List<PullRequest> results = new ArrayList<>();
+        while (url != null) {
+            Response<PullRequestsPage> response = execute(new HttpGet(url), parser::parsePullRequests);
+            if (response.status != 200) {
+                log.warn(String.format("Pull requests fetching call resulted in unexpected error: %s", response.error));
+                break;
+            }
+
+            results.addAll(response.value.values);
+            url = response.value.next;
+        }
+        return results;
+    }
 
-        return parsePullRequestsList(response);
+    private <T> Response<T> execute(HttpRequestBase request, BodyParser<T> bodyParser) throws IOException {
+        return execute(request, bodyParser, request instanceof HttpGet && responseCache.isEnabled());
     }
 
-    private List parsePullRequestsList(HttpResponse<JsonNode> response) {
-        JsonNode body = response.getBody();
-        if (response.getStatus() == 200) {
-            JSONArray pullRequests = body.getObject().getJSONArray("values");
-            List results = new ArrayList();
-            for (int index = 0; index < pullRequests.length(); index++) {
-                results.add(pullRequests.get(index));
+    private <T> Response<T> execute(HttpRequestBase request, BodyParser<T> bodyParser, boolean cacheable) throws IOException {
+        request.setHeader(HttpHeaders.ACCEPT, "application/json");
+        if (hasCredentials()) {
+            String credentials = bitbucketUser + ":" + bitbucketAppPassword;
+            request.setHeader(HttpHeaders.AUTHORIZATION,
+                    "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        String cacheKey = null;
+        String cachedEtag = null;
+        if (cacheable) {
+            cacheKey = responseCache.key(request.getURI().toString(), bitbucketUser, bitbucketAppPassword);
+            cachedEtag = responseCache.etag(cacheKey);
+            if (cachedEtag != null)
+                request.setHeader(HttpHeaders.IF_NONE_MATCH, cachedEtag);
+        }
+
+        HttpResponse response;
+        try (Metrics.Timer timer = metrics.timer("meterian_bitbucket_request_seconds",
+                "Time spent on Bitbucket API calls, retries included", "method", request.getMethod()).start()) {
+            response = httpClient.execute(request);
+        }
+        HttpEntity entity = response.getEntity();
+        try {
+            int status = response.getStatusLine().getStatusCode();
+            metrics.counter("meterian_bitbucket_responses_total", "Bitbucket API responses by status",
+                    "method", request.getMethod(), "status", Integer.toString(status)).inc();
+            if (status == 304 && cachedEtag != null) {
+                log.debug("Response for {} not modified, using cached copy", request.getURI());
+                responseCache.touch(cacheKey);
+                try (InputStream body = responseCache.open(cacheKey)) {
+                    return new Response<>(200, bodyParser.parse(body), null);
+                } catch (FileNotFoundException evicted) {
+                    log.debug("Cached copy for {} evicted meanwhile, fetching it again", request.getURI());
+                    EntityUtils.consumeQuietly(entity);
+                    request.removeHeaders(HttpHeaders.IF_NONE_MATCH);
+                    return execute(request, bodyParser, false);
+                }
+            }
+
+            if (entity == null)
+                return new Response<>(status, null, "");
+
+            // successful bodies are parsed while streaming, errors are kept as text for the logs
+            if (status >= 200 && status < 300) {
+                Header etag = response.getFirstHeader(HttpHeaders.ETAG);
+                if (cacheKey != null && status == 200 && etag != null) {
+                    try (InputStream body = entity.getContent()) {
+                        responseCache.store(cacheKey, etag.getValue(), body);
+                    }
+                    try (InputStream body = responseCache.open(cacheKey)) {
+                        return new Response<>(status, bodyParser.parse(body), null);
+                    }
+                }
+
+                try (InputStream body = entity.getContent()) {
+                    return new Response<>(status, bodyParser.parse(body), null);
+                }
             }
-            return results;
-        } else {
-            log.warn(String.format("Pull requests fetching call resulted in unexpected error: %s", response.getBody()));
-            return Collections.emptyList();
+            return new Response<>(status, null, EntityUtils.toString(entity, StandardCharsets.UTF_8));
+        } finally {
+            EntityUtils.consumeQuietly(entity);
+        }
+    }
+
+    private String readString(InputStream body) throws IOException {
+        return CharStreams.toString(new InputStreamReader(body, StandardCharsets.UTF_8));
+    }
+
+    private boolean hasCredentials() {
+        return bitbucketUser != null && !bitbucketUser.isEmpty()
+                && bitbucketAppPassword != null && !bitbucketAppPassword.isEmpty();
+    }
+
+    private interface BodyParser<T> {
+        T parse(InputStream body) throws IOException;
+    }
+
+    private static class Response<T> {
+        final int status;
+        final T value;
+        final String error;
+
+        Response(int status, T value, String error) {
+            this.status = status;
+            this.value = value;
+            this.error = error;
         }
     }
 }
@@ -1,14 +1,31 @@
 package io.meterian.bitbucket.pipelines;
 
+import io.meterian.ClientDownloader;
 import io.meterian.HttpClientFactory;
+import io.meterian.Metrics;
+import io.meterian.RunSummary;
+import io.meterian.bitbucket.BitbucketResponseCache;
+import io.meterian.core.JvmSizing;
+import io.meterian.core.Meterian;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
-public class BitbucketConfiguration implements HttpClientFactory.Config {
+public class BitbucketConfiguration implements HttpClientFactory.Config, ClientDownloader.Config, BitbucketResponseCache.Config, RunSummary.Config, Metrics.Config, JvmSizing.Config {
 
     private static final String DEFAULT_BASE_URL = "https://www.meterian.io";
-    private static final int ONE_MINUTE = 60 * 1000;
+    private static final String DEFAULT_BITBUCKET_API_URL = "https://api.bitbucket.org/2.0";
+    private static final int TEN_SECONDS = 10 * 1000;
+    private static final int THIRTY_SECONDS = 30 * 1000;
+    private static final int FIVE_MINUTES = 5 * 60 * 1000;
+    private static final long ONE_HOUR_IN_SECONDS = 60 * 60;
+    private static final long DEFAULT_CLIENT_CACHE_SIZE_IN_MEGABYTES = 256;
+    private static final long DEFAULT_BITBUCKET_CACHE_SIZE_IN_MEGABYTES = 16;
+    private static final long ONE_DAY_IN_SECONDS = 24 * ONE_HOUR_IN_SECONDS;
+    private static final long TEN_MINUTES_IN_SECONDS = 10 * 60;
 
     private final String baseUrl;
     private final String meterianAPIToken;
@@ -21,6 +38,7 @@ public class BitbucketConfiguration implements HttpClientFactory.Config {
     private List<String> unsetEnvVariablesList = new ArrayList<>();
 
     private String repoWorkspace;
+    private Map<String, String> environment = Collections.emptyMap();
 
     public BitbucketConfiguration(String baseUrl,
                                   String meterianAPIToken,
@@ -39,6 +57,11 @@ public class BitbucketConfiguration implements HttpClientFactory.Config {
         this.meterianBitbucketAppPassword = meterianBitbucketAppPassword;
     }
 
+    public BitbucketConfiguration withEnvironment(Map<String, String> environment) {
+        this.environment = environment;
+        return this;
+    }
+
     public String getJvmArgs() {
         return jvmArgs;
     }
@@ -55,10 +78,32 @@ public class BitbucketConfiguration implements HttpClientFactory.Config {
         return (text == null || text.trim().isEmpty()) ? defval : text;
     }
 
+    private long parseLong(String name, long defval) {
+        String text = environment.get(name);
+        try {
+            return (text == null || text.trim().isEmpty()) ? defval : Long.parseLong(text.trim());
+        } catch (NumberFormatException ex) {
+            return defval;
+        }
+    }
+
+    private int parseInt(String name, int defval) {
+        return (int) parseLong(name, defval);
+    }
+
+    private boolean parseBoolean(String name) {
+        return Boolean.parseBoolean(parseEmpty(environment.get(name), "false").trim());
+    }
+
+    @Override
     public String getMeterianBaseUrl() {
         return parseEmpty(baseUrl, DEFAULT_BASE_URL);
     }
 
+    public String getBitbucketApiUrl() {
+        return parseEmpty(environment.get("METERIAN_BITBUCKET_API_URL"), DEFAULT_BITBUCKET_API_URL);
+    }
+
     public String getMeterianBitbucketUser() {
         return meterianBitbucketUser;
     }
@@ -75,6 +120,108 @@ public class BitbucketConfiguration implements HttpClientFactory.Config {
         return repoWorkspace;
     }
 
+    @Override
+    public String getClientChannel() {
+        return parseEmpty(environment.get("METERIAN_CLIENT_CHANNEL"), ClientDownloader.DEFAULT_CHANNEL);
+    }
+
+    @Override
+    public File getClientCacheFolder() {
+        String folder = environment.get("METERIAN_CLIENT_CACHE_FOLDER");
+        return (folder == null || folder.trim().isEmpty()) ? ClientDownloader.CACHE_FOLDER : new File(folder);
+    }
+
+    @Override
+    public long getClientCacheMaxSizeInMegabytes() {
+        return parseLong("METERIAN_CLIENT_CACHE_SIZE_MB", DEFAULT_CLIENT_CACHE_SIZE_IN_MEGABYTES);
+    }
+
+    @Override
+    public long getClientCacheTtlInSeconds() {
+        return parseLong("METERIAN_CLIENT_CACHE_TTL", ONE_HOUR_IN_SECONDS);
+    }
+
+    @Override
+    public boolean isClientOffline() {
+        return parseBoolean("METERIAN_CLIENT_OFFLINE");
+    }
+
+    @Override
+    public String getClientSha256() {
+        return parseEmpty(environment.get("METERIAN_CLIENT_SHA256"), null);
+    }
+
+    @Override
+    public boolean isClientChecksumRequired() {
+        return parseBoolean("METERIAN_CLIENT_REQUIRE_CHECKSUM");
+    }
+
+    @Override
+    public File getBitbucketCacheFolder() {
+        String folder = environment.get("METERIAN_BITBUCKET_CACHE_FOLDER");
+        return (folder == null || folder.trim().isEmpty()) ? new File(getClientCacheFolder(), "bitbucket-cache") : new File(folder);
+    }
+
+    @Override
+    public long getBitbucketCacheMaxSizeInMegabytes() {
+        return parseLong("METERIAN_BITBUCKET_CACHE_SIZE_MB", DEFAULT_BITBUCKET_CACHE_SIZE_IN_MEGABYTES);
+    }
+
+    @Override
+    public long getBitbucketCacheMaxAgeInSeconds() {
+        return parseLong("METERIAN_BITBUCKET_CACHE_MAX_AGE", ONE_DAY_IN_SECONDS);
+    }
+
+    @Override
+    public File getRunSummaryFile() {
+        String file = environment.get("METERIAN_SUMMARY_FILE");
+        return (file == null || file.trim().isEmpty()) ? new File(getClientCacheFolder(), "last-run-summary.json") : new File(file);
+    }
+
+    @Override
+    public File getMetricsFile() {
+        String file = environment.get("METERIAN_METRICS_FILE");
+        return (file == null || file.trim().isEmpty()) ? new File(getClientCacheFolder(), "last-run-metrics.prom") : new File(file);
+    }
+
+    public String getClientOutputMode() {
+        String mode = environment.get("METERIAN_CLIENT_OUTPUT_MODE");
+        if (mode == null || mode.trim().isEmpty())
+            return Meterian.OUTPUT_GOBBLE;
+
+        mode = mode.trim().toLowerCase();
+        return (mode.equals(Meterian.OUTPUT_INHERIT) || mode.equals(Meterian.OUTPUT_FILE)) ? mode : Meterian.OUTPUT_GOBBLE;
+    }
+
+    public File getClientOutputFile() {
+        String file = environment.get("METERIAN_CLIENT_OUTPUT_FILE");
+        return (file == null || file.trim().isEmpty()) ? new File(getClientCacheFolder(), "last-client-output.log") : new File(file);
+    }
+
+    public long getScanTimeoutInSeconds() {
+        long timeout = parseLong("METERIAN_SCAN_TIMEOUT", TEN_MINUTES_IN_SECONDS);
+        return timeout > 0 ? timeout : TEN_MINUTES_IN_SECONDS;
+    }
+
+    public String getExtraJvmArgs() {
+        return parseEmpty(environment.get("METERIAN_JVM_ARGS"), "");
+    }
+
+    @Override
+    public int getJvmHeapPercentage() {
+        return parseInt("METERIAN_JVM_HEAP_PERCENTAGE", 0);
+    }
+
+    @Override
+    public String getJvmGc() {
+        return parseEmpty(environment.get("METERIAN_JVM_GC"), null);
+    }
+
+    @Override
+    public int getJvmProcessors() {
+        return parseInt("METERIAN_JVM_PROCESSORS", 0);
+    }
+
     public List<String> checkIfEnvironmentVariableHaveBeenSet() {
         addEnvironmentVariableToListIfAbsent(meterianAPIToken, "METERIAN_API_TOKEN");
         addEnvironmentVariableToListIfAbsent(meterianBitbucketUser,"METERIAN_BITBUCKET_USER");
@@ -92,22 +239,58 @@ public class BitbucketConfiguration implements HttpClientFactory.Config {
 
     @Override
     public int getHttpConnectTimeout() {
-        return ONE_MINUTE;
+        return parseInt("METERIAN_HTTP_CONNECT_TIMEOUT_MS", TEN_SECONDS);
     }
 
     @Override
     public int getHttpSocketTimeout() {
-        return ONE_MINUTE;
+        return parseInt("METERIAN_HTTP_SOCKET_TIMEOUT_MS", THIRTY_SECONDS);
+    }
+
+    @Override
+    public int getHttpConnectionRequestTimeout() {
+        return parseInt("METERIAN_HTTP_CONNECTION_REQUEST_TIMEOUT_MS", TEN_SECONDS);
     }
 
     @Override
     public int getHttpMaxTotalConnections() {
-        return 100;
+        return parseInt("METERIAN_HTTP_MAX_CONNECTIONS", 20);
     }
 
     @Override
     public int getHttpMaxDefaultConnectionsPerRoute() {
-        return 100;
+        return parseInt("METERIAN_HTTP_MAX_CONNECTIONS_PER_ROUTE", 10);
+    }
+
+    @Override
+    public long getHttpConnectionTimeToLive() {
+        return parseLong("METERIAN_HTTP_CONNECTION_TTL_MS", FIVE_MINUTES);
+    }
+
+    @Override
+    public long getHttpMaxIdleTime() {
+        return parseLong("METERIAN_HTTP_MAX_IDLE_TIME_MS", THIRTY_SECONDS);
+    }
+
+    @Override
+    public int getHttpRetryMaxAttempts() {
+        return parseInt("METERIAN_HTTP_RETRY_MAX_ATTEMPTS", 4);
+    }
+
+    @Override
+    public long getHttpRetryBudget() {
+        return parseLong("METERIAN_HTTP_RETRY_BUDGET_MS", 60 * 1000);
+    }
+
+    @Override
+    public String getHttpProxyHost() {
+        return parseEmpty(environment.get("METERIAN_HTTP_PROXY_HOST"), null);
+    }
+
+    @Override
+    public Integer getHttpProxyPort() {
+        int port = parseInt("METERIAN_HTTP_PROXY_PORT", -1);
+        return port > 0 ? port : null;
     }
 
     @Override
@@ -3,9 +3,12 @@ package io.meterian.bitbucket.pipelines;
 import com.meterian.common.system.OS;
 import io.meterian.AutoFixFeature;
 import io.meterian.ClientRunner;
+import io.meterian.HttpClientFactory;
 import io.meterian.MeterianConsole;
+import io.meterian.RunSummary;
 import io.meterian.core.Meterian;
 import org.apache.commons.lang3.ArrayUtils;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,6 +41,7 @@ public class BitbucketPipelines {
             exitCode = main.runMeterianScanner(args);
         }
 
+        console.close();
         log.info("Bitbucket Pipelines CLI app finished");
         System.exit(exitCode);
     }
@@ -63,34 +67,48 @@ public class BitbucketPipelines {
                           String[] cliArgs) throws IOException {
         log.info(String.format("WORKSPACE: %s", environment.get("WORKSPACE")));
 
-        Meterian client = Meterian.build(
-                configuration,
-                environment,
-                console,
-                NO_JVM_ARGS);
-
-        if (!client.requiredEnvironmentVariableHasBeenSet()) {
-            console.println("[warning] Exiting as required environment variable(s) have not been set");
-            log.warn("Exiting as required environment variable(s) have not been set");
-            return -1;
-        }
-
-        String[] composedCliArgs = ArrayUtils.addAll(new String[]{"--interactive=false"}, cliArgs);
-        client.prepare(composedCliArgs);
-
-        ClientRunner clientRunner = new ClientRunner(client, console);
+        RunSummary summary = new RunSummary();
         int exitCode = -1;
-        if (clientRunner.userHasUsedTheAutofixFlag()) {
-            exitCode = new AutoFixFeature(
-                    configuration,
-                    clientRunner,
-                    console
-            ).execute();
-        } else {
-            exitCode = clientRunner.execute();
-        }
 
-        return exitCode;
+        // a single pooled client for the whole run, shared by the client download and the Bitbucket calls
+        try (CloseableHttpClient httpClient = new HttpClientFactory().newHttpClient(configuration);
+             Meterian client = Meterian.build(
+                     configuration,
+                     environment,
+                     console,
+                     NO_JVM_ARGS,
+                     httpClient,
+                     summary)) {
+
+            if (!client.requiredEnvironmentVariableHasBeenSet()) {
+                console.println("[warning] Exiting as required environment variable(s) have not been set");
+                log.warn("Exiting as required environment variable(s) have not been set");
+                return exitCode;
+            }
+
+            String[] composedCliArgs = ArrayUtils.addAll(new String[]{"--interactive=false"}, cliArgs);
+            client.prepare(composedCliArgs);
+
+            ClientRunner clientRunner = new ClientRunner(client, console);
+            if (clientRunner.userHasUsedTheAutofixFlag()) {
+                exitCode = new AutoFixFeature(
+                        configuration,
+                        clientRunner,
+                        console,
+                        httpClient,
+                        summary
+                ).execute();
+            } else {
+                exitCode = clientRunner.execute();
+            }
+
+            return exitCode;
+        } finally {
+            summary.recordExit(exitCode);
+            summary.write(configuration.getRunSummaryFile());
+            summary.getMetrics().write(configuration.getMetricsFile());
+            console.flush();
+        }
     }
 
     private BitbucketConfiguration getConfiguration() {
@@ -111,7 +129,8 @@ public class BitbucketPipelines {
                 repoWorkspace,
                 meterianBitbucketUser,
                 meterianBitbucketEmail,
-                meterianBitbucketAppPassword);
+                meterianBitbucketAppPassword)
+                .withEnvironment(environment);
     }
 
     private Map<String, String> getOSEnvSettings() {
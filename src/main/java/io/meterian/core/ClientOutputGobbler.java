@@ -0,0 +1,47 @@
+package io.meterian.core;
+
+import com.meterian.common.system.LineGobbler;
+import io.meterian.MeterianConsole;
+import io.meterian.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+class ClientOutputGobbler implements LineGobbler {
+
+    private static final Logger log = LoggerFactory.getLogger(Meterian.class);
+
+    private final MeterianConsole console;
+    private final Meterian.Result result;
+    private final ReportUrlMatcher matcher = new ReportUrlMatcher();
+    private final Metrics.Counter lines;
+
+    ClientOutputGobbler(MeterianConsole console, Meterian.Result result, Metrics metrics) {
+        this.console = console;
+        this.result = result;
+        this.lines = metrics.counter("meterian_client_output_lines_total", "Lines printed by the Meterian client");
+    }
+
+    @Override
+    public void process(String type, String line) {
+        process(type, (CharSequence) line);
+    }
+
+    /**
+     * Works on the line as handed over by the gobbler, that is turned into a String only when debug logging is on,
+     * as the console already shows every line.
+     */
+    @Override
+    public void process(String type, CharSequence line) {
+        lines.inc();
+        if (log.isDebugEnabled())
+            log.debug(line.toString());
+        console.println("[meterian] ", line);
+
+        // the client blocks on a full pipe if we stop reading its output, whatever the line
+        try {
+            matcher.match(line, result);
+        } catch (RuntimeException e) {
+            log.warn("Unexpected", e);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package io.meterian.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Derives the heap, GC and processor flags of the client JVM from the cgroup (v1 or v2) limits of the
+ * container the pipeline runs in, as the JVM defaults (a quarter of the memory as heap) or older JVMs
+ * that do not read cgroup v2 size it for the host rather than for the container.
+ */
+public class JvmSizing {
+
+    public static interface Config {
+
+        /**
+         * @return the maximum heap as a percentage of the container memory, 0 to derive it
+         */
+        int getJvmHeapPercentage();
+
+        /**
+         * @return g1, parallel, serial, z, shenandoah or default, null to derive it
+         */
+        String getJvmGc();
+
+        /**
+         * @return the processors the JVM sizes its thread pools for, 0 to derive it
+         */
+        int getJvmProcessors();
+
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(JvmSizing.class);
+
+    private static final File CGROUP_ROOT = new File("/sys/fs/cgroup");
+    private static final long UNLIMITED = 1L << 50;
+    private static final long ONE_GIGABYTE = 1024L * 1024L * 1024L;
+    private static final long SERVER_CLASS_MEMORY = 1792L * 1024L * 1024L;
+    private static final String ZGC = "-XX:+UseZGC";
+    private static final String SHENANDOAH = "-XX:+UseShenandoahGC";
+
+    private final Config config;
+    private final File cgroupRoot;
+
+    public JvmSizing(Config config) {
+        this(config, CGROUP_ROOT);
+    }
+
+    JvmSizing(Config config, File cgroupRoot) {
+        this.config = config;
+        this.cgroupRoot = cgroupRoot;
+    }
+
+    public List<String> jvmArgs() {
+        long memory = memoryLimit();
+        int processors = config.getJvmProcessors() > 0 ? config.getJvmProcessors() : cpuLimit();
+        log.info("Container limits: memory {}, processors {}", memory > 0 ? memory / (1024 * 1024) + " MB" : "none", processors > 0 ? processors : "none");
+
+        List<String> args = new ArrayList<>();
+        // the percentage applies to the memory the JVM detects, i.e. the host memory on a JVM blind to cgroup v2
+        if (memory > 0)
+            args.add("-XX:MaxRAM=" + memory);
+
+        int heapPercentage = config.getJvmHeapPercentage();
+        if (heapPercentage <= 0 || heapPercentage > 100)
+            heapPercentage = (memory <= 0) ? 0 : (memory <= ONE_GIGABYTE ? 50 : 75);
+        if (heapPercentage > 0)
+            args.add("-XX:MaxRAMPercentage=" + heapPercentage + ".0");
+
+        if (processors > 0)
+            args.add("-XX:ActiveProcessorCount=" + processors);
+
+        String gc = gcFlag(config.getJvmGc(), memory, processors);
+        if (gc != null) {
+            // both experimental up to JDK 14, refused there without the unlock
+            if (gc.equals(ZGC) || gc.equals(SHENANDOAH))
+                args.add("-XX:+UnlockExperimentalVMOptions");
+            args.add(gc);
+        }
+
+        // so that a JVM older than these flags starts anyway
+        if (!args.isEmpty())
+            args.add(0, "-XX:+IgnoreUnrecognizedVMOptions");
+        return args;
+    }
+
+    private static String gcFlag(String gc, long memory, int processors) {
+        String name = (gc == null) ? "" : gc.trim().toLowerCase(Locale.ROOT);
+        switch (name) {
+            case "g1":
+                return "-XX:+UseG1GC";
+            case "parallel":
+                return "-XX:+UseParallelGC";
+            case "serial":
+                return "-XX:+UseSerialGC";
+            case "z":
+                return ZGC;
+            case "shenandoah":
+                return SHENANDOAH;
+            case "default":
+                return null;
+            default:
+                if (memory <= 0 || processors <= 0)
+                    return null;
+                // the ergonomics of the JVM: below a server class machine G1 is not worth its overhead
+                return (memory >= SERVER_CLASS_MEMORY && processors >= 2) ? "-XX:+UseG1GC" : "-XX:+UseSerialGC";
+        }
+    }
+
+    /**
+     * @return the container memory limit in bytes, 0 when unlimited or unknown
+     */
+    long memoryLimit() {
+        String limit = isCgroupV2() ? read("memory.max") : read("memory/memory.limit_in_bytes");
+        long bytes = parse(limit);
+        return (bytes <= 0 || bytes >= UNLIMITED) ? 0 : bytes;
+    }
+
+    /**
+     * @return the processors granted by the container CPU quota, rounded up, 0 when unlimited or unknown
+     */
+    int cpuLimit() {
+        long quota, period;
+        if (isCgroupV2()) {
+            String[] max = String.valueOf(read("cpu.max")).trim().split("\\s+");
+            quota = parse(max[0]);
+            period = max.length > 1 ? parse(max[1]) : 0;
+        } else {
+            String folder = new File(cgroupRoot, "cpu").isDirectory() ? "cpu" : "cpu,cpuacct";
+            quota = parse(read(folder + "/cpu.cfs_quota_us"));
+            period = parse(read(folder + "/cpu.cfs_period_us"));
+        }
+
+        if (quota <= 0 || period <= 0)
+            return 0;
+        return (int) Math.max(1, (quota + period - 1) / period);
+    }
+
+    private boolean isCgroupV2() {
+        return new File(cgroupRoot, "cgroup.controllers").isFile();
+    }
+
+    private String read(String path) {
+        File file = new File(cgroupRoot, path);
+        if (!file.isFile())
+            return null;
+
+        try {
+            return new String(Files.readAllBytes(file.toPath()), StandardCharsets.US_ASCII).trim();
+        } catch (IOException ex) {
+            log.debug("Unable to read {}", file, ex);
+            return null;
+        }
+    }
+
+    private static long parse(String value) {
+        try {
+            return (value == null || value.equals("max")) ? 0 : Long.parseLong(value.trim());
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+}
@@ -1,25 +1,24 @@
 package io.meterian.core;
 
 import com.meterian.common.system.LineGobbler;
-import com.meterian.common.system.OS;
 import com.meterian.common.system.Shell;
 import com.meterian.common.system.Shell.Options;
 import com.meterian.common.system.Shell.Task;
-import io.meterian.HttpClientFactory;
 import io.meterian.MeterianConsole;
 import io.meterian.ClientDownloader;
+import io.meterian.RunSummary;
 import io.meterian.bitbucket.pipelines.BitbucketConfiguration;
-import org.apache.http.NameValuePair;
 import org.apache.http.client.HttpClient;
-import org.apache.http.client.utils.URLEncodedUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.lang.ProcessBuilder.Redirect;
 import java.net.URI;
-import java.net.URISyntaxException;
-import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -27,7 +26,11 @@ import java.util.UUID;
 
 import java.util.*;
 
-public class Meterian {
+public class Meterian implements AutoCloseable {
+
+    public static final String OUTPUT_GOBBLE = "gobble";
+    public static final String OUTPUT_INHERIT = "inherit";
+    public static final String OUTPUT_FILE = "file";
 
     private static final String ENVIRONMENT_VARIABLE_ABSENT_WARNING =
             "[meterian] Warning: %s has not been set in the config (please check for settings in " +
@@ -53,29 +56,37 @@ public class Meterian {
     private final MeterianConsole console;
     private final String args;
     private final Shell shell;
+    private final RunSummary summary;
 
+    private ClientDownloader downloader;
     private File clientJar;
     private List<String> finalClientArgs;
     private List<String> finalJvmArgs;
 
-    public static Meterian build(BitbucketConfiguration config, Map<String, String> environment, MeterianConsole console, String args)
+    public static Meterian build(BitbucketConfiguration config, Map<String, String> environment, MeterianConsole console, String args, HttpClient httpClient, RunSummary summary)
             throws IOException {
-        Meterian meterian = new Meterian(config, environment, console, args);
-        meterian.init();
+        Meterian meterian = new Meterian(config, environment, console, args, summary);
+        try {
+            meterian.init(httpClient);
+        } catch (IOException | RuntimeException ex) {
+            meterian.close();
+            throw ex;
+        }
         return meterian;
     }
 
-    private Meterian(BitbucketConfiguration config, Map<String, String> environment, MeterianConsole console, String args) {
+    private Meterian(BitbucketConfiguration config, Map<String, String> environment, MeterianConsole console, String args, RunSummary summary) {
         this.config = config;
         this.args = args;
         this.environment = environment;
         this.console = console;
+        this.summary = summary;
         this.shell = new Shell();
     }
 
-    private void init() throws IOException {
-        HttpClient httpClient = new HttpClientFactory().newHttpClient(config);
-        clientJar = new ClientDownloader(httpClient, config.getMeterianBaseUrl(), console).load();
+    private void init(HttpClient httpClient) throws IOException {
+        downloader = new ClientDownloader(httpClient, config, console, summary);
+        clientJar = downloader.load();
     }
 
     private void init(File clientJar) {
@@ -83,7 +94,9 @@ public class Meterian {
     }
 
     public void prepare(String... extraClientArgs) {
-        finalJvmArgs = compose(config.getJvmArgs(), mandatoryJvmArgs());
+        finalJvmArgs = new JvmSizing(config).jvmArgs();
+        finalJvmArgs.addAll(compose(config.getJvmArgs(), null));
+        finalJvmArgs.addAll(compose(config.getExtraJvmArgs(), mandatoryJvmArgs()));
         finalClientArgs = compose(args, extraClientArgs);
     }
 
@@ -97,6 +110,16 @@ public class Meterian {
         return true;
     }
 
+    /**
+     * Releases the shell and the client, that can then be evicted from the cache.
+     */
+    @Override
+    public void close() {
+        shell.close();
+        if (downloader != null)
+            downloader.close();
+    }
+
     public List<String> getFinalClientArgs() {
         return finalClientArgs;
     }
@@ -107,9 +130,19 @@ public class Meterian {
         log.info("args: {}", finalClientArgs);
 
         Meterian.Result result = new Meterian.Result();
+        long started = System.nanoTime();
         Task task = shell.exec(commands(finalJvmArgs, finalClientArgs), options(result));
-        task.waitFor();
-        result.exitCode = task.exitValue();
+        summary.recordPhase(RunSummary.PROCESS_LAUNCH, started);
+
+        started = System.nanoTime();
+        long timeout = config.getScanTimeoutInSeconds();
+        result.exitCode = task.waitFor(timeout);
+        if (task.isTimedOut())
+            console.println("[meterian] The client did not complete within " + timeout + " seconds and has been stopped, the timeout can be raised with METERIAN_SCAN_TIMEOUT");
+        if (OUTPUT_FILE.equals(config.getClientOutputMode()))
+            scanReportUrl(config.getClientOutputFile(), result);
+        summary.recordPhase(RunSummary.ANALYSIS, started);
+        summary.recordResult(result);
 
         return result;
     }
@@ -150,65 +183,46 @@ public class Meterian {
     }
 
     private Options options(Meterian.Result result) {
-        LineGobbler gobbler = new LineGobbler() {
-            int count = 0;
-
-            @Override
-            public void process(String type, String line) {
-                log.info(line);
-
-                console.print("[meterian] ");
-                console.println(line);
-                if (++count % 10 == 0)
-                    console.flush();
-
-                try {
-                    parseMeterianReportURLIfPresent(line);
-                } catch (URISyntaxException e) {
-                    log.warn("Unexpected", e);
-                }
-            }
+        log.info("Using config token: {}", config.getMeterianAPIToken() != null ? "yes" : "no");
 
-            private void parseMeterianReportURLIfPresent(String line) throws URISyntaxException {
-                if (line.indexOf("http") == -1 || line.indexOf("meterian.") == -1)
-                    return;
-
-                log.debug("Possible URL found in line {}", line);
-                String[] tokens = line.split(" ");
-                for (String token : tokens) {
-                    if (token.startsWith("http")) {
-                        UUID pid = null;
-                        String branch = null;
-                        URI url = new URI(token);
-                        List<NameValuePair> params = URLEncodedUtils.parse(url, Charset.forName("UTF-8"));
-                        for (NameValuePair param : params) {
-                            if ("branch".equalsIgnoreCase(param.getName())) {
-                                branch = param.getValue();
-                                log.debug("Meterian project branch?: {}", branch);
-                            } else if ("pid".equalsIgnoreCase(param.getName())) {
-                                pid = UUID.fromString(param.getValue());
-                                log.debug("Meterian project UUID?: {}", pid);
-                            }
-                        }
-
-                        if (branch != null && pid != null) {
-                            result.projectBranch = branch;
-                            result.projectUUID = pid;
-                            result.reportUrl = url;
-                            log.info("Meterian project info: {}", result);
-                        }
-                    }
-                }
-            }
-        };
+        // the client inherits the environment of this process, only the overrides are applied
+        Options options = new Options()
+                .withEnvironmentVariables(overrides(environment, System.getenv()))
+                .withEnvironmentVariable("METERIAN_API_TOKEN", config.getMeterianAPIToken());
+
+        String mode = config.getClientOutputMode();
+        if (OUTPUT_INHERIT.equals(mode)) {
+            options.withOutputRedirect(Redirect.INHERIT).withErrorMergedIntoOutput();
+        } else if (OUTPUT_FILE.equals(mode)) {
+            File file = config.getClientOutputFile();
+            file.getAbsoluteFile().getParentFile().mkdirs();
+            console.println("[meterian] Client output redirected to " + file);
+            options.withOutputRedirect(Redirect.to(file)).withErrorMergedIntoOutput();
+        } else {
+            LineGobbler gobbler = new ClientOutputGobbler(console, result, summary.getMetrics());
+            options.withOutputGobbler(gobbler).withErrorGobbler(gobbler).withNioGobbling();
+        }
 
-        log.info("Using config token: {}", config.getMeterianAPIToken() != null ? "yes" : "no");
+        return options;
+    }
 
-        return new Options()
-                .withOutputGobbler(gobbler)
-                .withErrorGobbler(gobbler)
-                .withEnvironmentVariables(this.environment)
-                .withEnvironmentVariable("METERIAN_API_TOKEN", config.getMeterianAPIToken())
-                .withEnvironmentVariables(new OS().getenv());
+    static Map<String, String> overrides(Map<String, String> environment, Map<String, String> inherited) {
+        Map<String, String> overrides = new HashMap<>();
+        for (Map.Entry<String, String> variable : environment.entrySet()) {
+            if (variable.getValue() != null && !variable.getValue().equals(inherited.get(variable.getKey())))
+                overrides.put(variable.getKey(), variable.getValue());
+        }
+        return overrides;
+    }
+
+    private void scanReportUrl(File file, Meterian.Result result) {
+        ReportUrlMatcher matcher = new ReportUrlMatcher();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while (!matcher.isCaptured() && (line = reader.readLine()) != null)
+                matcher.match(line, result);
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Unable to read the client output from {}", file, ex);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,165 @@
+package io.meterian.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.util.UUID;
+
+/**
+ * Finds the Meterian report url in the client output, i.e.
+ * <pre>https://www.meterian.com/projects/?pid=...&branch=master&mode=eli</pre>
+ * with a single scan of each line, allocating only when the url is found, so that lines can be matched
+ * while still in the buffer of the gobbler. Once the url has been
+ * captured any further line is ignored, as the report is printed once at the end of the analysis.
+ */
+class ReportUrlMatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(Meterian.class);
+
+    private static final String SCHEME = "http";
+    private static final String HOST_MARKER = "meterian.";
+    private static final String PID = "pid";
+    private static final String BRANCH = "branch";
+
+    private volatile boolean captured = false;
+
+    public boolean isCaptured() {
+        return captured;
+    }
+
+    public boolean match(CharSequence line, Meterian.Result result) {
+        if (captured)
+            return false;
+
+        int start = indexOf(line, SCHEME, 0);
+        while (start != -1) {
+            int end = indexOf(line, ' ', start);
+            if (end == -1)
+                end = line.length();
+
+            if ((start == 0 || line.charAt(start - 1) == ' ') && matchUrl(line, start, end, result))
+                return true;
+
+            start = indexOf(line, SCHEME, end);
+        }
+
+        return false;
+    }
+
+    private boolean matchUrl(CharSequence line, int start, int end, Meterian.Result result) {
+        int marker = indexOf(line, HOST_MARKER, start);
+        int query = indexOf(line, '?', start);
+        if (marker == -1 || marker >= end || query == -1 || query >= end)
+            return false;
+
+        int pidStart = -1, pidEnd = -1;
+        int branchStart = -1, branchEnd = -1;
+        int paramStart = query + 1;
+        while (paramStart < end) {
+            int paramEnd = indexOfEither(line, '&', '#', paramStart, end);
+            int equals = indexOf(line, '=', paramStart);
+            if (equals != -1 && equals < paramEnd) {
+                if (isName(line, paramStart, equals, PID)) {
+                    pidStart = equals + 1;
+                    pidEnd = paramEnd;
+                } else if (isName(line, paramStart, equals, BRANCH)) {
+                    branchStart = equals + 1;
+                    branchEnd = paramEnd;
+                }
+            }
+
+            if (paramEnd == end || line.charAt(paramEnd) == '#')
+                break;
+            paramStart = paramEnd + 1;
+        }
+
+        if (pidStart == -1 || branchStart == -1)
+            return false;
+
+        return capture(line, start, end, pidStart, pidEnd, branchStart, branchEnd, result);
+    }
+
+    private synchronized boolean capture(CharSequence line, int start, int end, int pidStart, int pidEnd,
+                                         int branchStart, int branchEnd, Meterian.Result result) {
+        if (captured)
+            return false;
+
+        try {
+            UUID pid = UUID.fromString(decode(line.subSequence(pidStart, pidEnd).toString()));
+            String branch = decode(line.subSequence(branchStart, branchEnd).toString());
+            URI url = new URI(line.subSequence(start, end).toString());
+
+            result.projectUUID = pid;
+            result.projectBranch = branch;
+            result.reportUrl = url;
+            captured = true;
+            log.info("Meterian project info: {}", result);
+            return true;
+        } catch (Exception any) {
+            log.warn("Unexpected report url in line {}", line, any);
+            return false;
+        }
+    }
+
+    private static boolean isName(CharSequence line, int start, int end, String name) {
+        if (end - start != name.length())
+            return false;
+
+        for (int i = 0; i < name.length(); i++) {
+            if (Character.toLowerCase(line.charAt(start + i)) != name.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private static int indexOf(CharSequence line, char c, int from) {
+        if (line instanceof String)
+            return ((String) line).indexOf(c, from);
+
+        for (int i = from; i < line.length(); i++) {
+            if (line.charAt(i) == c)
+                return i;
+        }
+        return -1;
+    }
+
+    private static int indexOf(CharSequence line, String text, int from) {
+        if (line instanceof String)
+            return ((String) line).indexOf(text, from);
+
+        char first = text.charAt(0);
+        int last = line.length() - text.length();
+        for (int i = from; i <= last; i++) {
+            if (line.charAt(i) == first && regionMatches(line, i, text))
+                return i;
+        }
+        return -1;
+    }
+
+    private static boolean regionMatches(CharSequence line, int start, String text) {
+        for (int i = 1; i < text.length(); i++) {
+            if (line.charAt(start + i) != text.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private static int indexOfEither(CharSequence line, char first, char second, int from, int end) {
+        for (int i = from; i < end; i++) {
+            char c = line.charAt(i);
+            if (c == first || c == second)
+                return i;
+        }
+        return end;
+    }
+
+    private static String decode(String value) throws UnsupportedEncodingException {
+        if (value.indexOf('%') == -1 && value.indexOf('+') == -1)
+            return value;
+
+        return URLDecoder.decode(value, "UTF-8");
+    }
+}
@@ -1,6 +1,7 @@
 package io.meterian.git;
 
 import io.meterian.MeterianConsole;
+import io.meterian.Metrics;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.ListBranchCommand;
 import org.eclipse.jgit.api.RemoteSetUrlCommand;
@@ -35,6 +36,7 @@ public class LocalGitClient {
     private final String meterianBitbucketUser;  // Machine User name
     private final String meterianBitbucketEmail; // Email associated with the Machine User
     private MeterianConsole console;
+    private final Metrics metrics;
     private String currentBranch;
     private UsernamePasswordCredentialsProvider credentialsProvider;
 
@@ -42,7 +44,8 @@ public class LocalGitClient {
                           String meterianBitbucketUser,
                           String meterianBitbucketAppPassword,
                           String meterianBitbucketEmail,
-                          MeterianConsole console) {
+                          MeterianConsole console,
+                          Metrics metrics) {
         credentialsProvider = new UsernamePasswordCredentialsProvider(
                 meterianBitbucketUser, meterianBitbucketAppPassword);
 
@@ -50,6 +53,7 @@ public class LocalGitClient {
         this.meterianBitbucketEmail = meterianBitbucketEmail;
 
         this.console = console;
+        this.metrics = metrics;
 
         log.info(String.format("Workspace (path to the bitbucket repo): %s", pathToRepo));
         try {
@@ -127,14 +131,18 @@ public class LocalGitClient {
             log.debug("Checking if current branch was created by Meterian");
             if (currentBranchWasCreatedByMeterianClient()) {
                 log.info(String.format("Checking if the branch %s to be created already exists in remote repo", currentBranch));
-                git.fetch()
-                        .setRemoveDeletedRefs(true)
-                        .call();
+                try (Metrics.Timer timer = timer("fetch")) {
+                    git.fetch()
+                            .setRemoveDeletedRefs(true)
+                            .call();
+                }
                 if (meterianRemoteBranchDoesNotExists()) {
                     log.info(String.format("Branch %s does not exist in remote repo, started pushing branch", currentBranch));
-                    git.push()
-                        .setCredentialsProvider(credentialsProvider)
-                        .call();
+                    try (Metrics.Timer timer = timer("push")) {
+                        git.push()
+                            .setCredentialsProvider(credentialsProvider)
+                            .call();
+                    }
                     log.info("Finished pushing branch to remote repo");
                 } else {
                     String branchAlreadyExistsWarning = String.format(REMOTE_BRANCH_ALREADY_EXISTS_WARNING, currentBranch);
@@ -210,15 +218,19 @@ public class LocalGitClient {
     }
 
     private Set<String> listOfChanges() throws GitAPIException {
-        return git.status()
-                .call()
-                .getModified();
+        try (Metrics.Timer timer = timer("status")) {
+            return git.status()
+                    .call()
+                    .getModified();
+        }
     }
 
     public boolean hasChanges() throws GitAPIException {
-        return !git.status()
-                .call()
-                .isClean();
+        try (Metrics.Timer timer = timer("status")) {
+            return !git.status()
+                    .call()
+                    .isClean();
+        }
     }
 
     public void resetChanges() throws GitAPIException {
@@ -311,12 +323,18 @@ public class LocalGitClient {
                                     String email,
                                     String commitMessage) throws GitAPIException {
         log.info(String.format("Committing changes from author: %s", authorName));
-        return git
-                .commit()
-                .setAuthor(authorName, email)
-                .setCommitter(committerName, email)
-                .setMessage(commitMessage)
-                .call();
+        try (Metrics.Timer timer = timer("commit")) {
+            return git
+                    .commit()
+                    .setAuthor(authorName, email)
+                    .setCommitter(committerName, email)
+                    .setMessage(commitMessage)
+                    .call();
+        }
+    }
+
+    private Metrics.Timer timer(String operation) {
+        return metrics.timer("meterian_git_operation_seconds", "Time spent on git operations", "operation", operation).start();
     }
 
     private boolean byLocalFixedBranchName(Ref branch) {
@@ -0,0 +1,19 @@
+package com.meterian.common.io;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class Sha256Test {
+
+    @Test
+    public void shouldPrintTheDigestAsShasumDoes() {
+        assertThat(Sha256.of("abc"), is("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad"));
+    }
+
+    @Test
+    public void shouldPadEachByteToTwoDigits() {
+        assertThat(Sha256.toHex(new byte[]{0x00, 0x0f, (byte) 0xf0, (byte) 0xff}), is("000ff0ff"));
+    }
+}
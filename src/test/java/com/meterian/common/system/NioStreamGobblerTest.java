@@ -0,0 +1,60 @@
+package com.meterian.common.system;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class NioStreamGobblerTest {
+
+    @Test
+    public void shouldSplitLinesAsTheBufferedReaderDoes() {
+        List<String> lines = gobble("one\ntwo\r\nthree\rfour\n\nfive", NioStreamGobbler.DEFAULT_BUFFER_SIZE);
+
+        assertThat(lines, is(Arrays.asList("one", "two", "three", "four", "", "five")));
+    }
+
+    @Test
+    public void shouldDecodeCharactersSplitAcrossBuffers() {
+        String text = "café ✓ 😀 naïve";
+
+        List<String> lines = gobble(text + "\r\n" + text, 4);
+
+        assertThat(lines, is(Arrays.asList(text, text)));
+    }
+
+    @Test
+    public void shouldCountDownTheLatchWhenDone() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+
+        new NioStreamGobbler(new ByteArrayInputStream(new byte[0]), "STDOUT", Shell.NO_GOBBLER, latch).run();
+
+        assertThat(latch.getCount(), is(0L));
+    }
+
+    private List<String> gobble(String text, int bufferSize) {
+        List<String> lines = new ArrayList<>();
+        LineGobbler gobbler = new LineGobbler() {
+            @Override
+            public void process(String type, String line) {
+                throw new AssertionError("Strings should not be created");
+            }
+
+            @Override
+            public void process(String type, CharSequence line) {
+                lines.add(line.toString());
+            }
+        };
+
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        new NioStreamGobbler(new ByteArrayInputStream(bytes), "STDOUT", gobbler, new CountDownLatch(1), bufferSize).run();
+        return lines;
+    }
+}
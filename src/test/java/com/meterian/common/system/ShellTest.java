@@ -0,0 +1,132 @@
+package com.meterian.common.system;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ShellTest {
+
+    private static final String JAVA = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+
+    @Test
+    public void shouldGobbleOnTheSharedThreadPool() throws Exception {
+        List<String> lines = new CopyOnWriteArrayList<>();
+        try (Shell shell = new Shell()) {
+            Shell.Task task = shell.exec(new String[]{JAVA, "-version"}, new Shell.Options().withErrorGobbler((type, line) -> lines.add(line)));
+
+            assertThat(task.waitFor(), is(0));
+            assertThat(lines.isEmpty(), is(false));
+        }
+
+        assertThat(Shell.sharedThreadPool().isShutdown(), is(false));
+    }
+
+    @Test
+    public void shouldCompleteWithTheExitValue() throws Exception {
+        try (Shell shell = new Shell()) {
+            Shell.Task task = shell.exec(JAVA, "-version");
+
+            assertThat(task.onExit().get(10, TimeUnit.SECONDS), is(0));
+            assertThat(task.waitFor(), is(0));
+            assertThat(task.isTimedOut(), is(false));
+        }
+    }
+
+    @Test
+    public void shouldDestroyTheProcessWhenTheTimeoutExpires() throws Exception {
+        try (Shell shell = new Shell()) {
+            Shell.Task task = shell.exec(JAVA, "-cp", testClasses(), Sleep.class.getName());
+
+            long started = System.nanoTime();
+            int exitValue = task.waitFor(1, TimeUnit.SECONDS);
+
+            assertThat(exitValue, is(Shell.Task.TIMED_OUT));
+            assertThat(task.isTimedOut(), is(true));
+            assertThat(task.isAlive(), is(false));
+            assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started) < 10, is(true));
+            assertThat(task.onExit().isCompletedExceptionally(), is(true));
+        }
+    }
+
+    @Test
+    public void shouldSettleTheTimeoutOnceWhenWaitedConcurrently() throws Exception {
+        try (Shell shell = new Shell()) {
+            Shell.Task task = shell.exec(JAVA, "-cp", testClasses(), Sleep.class.getName());
+
+            CompletableFuture<Integer> exit = task.onExit(1, TimeUnit.SECONDS);
+            assertThat(task.waitFor(1, TimeUnit.SECONDS), is(Shell.Task.TIMED_OUT));
+
+            try {
+                exit.get(15, TimeUnit.SECONDS);
+                fail("The task should have timed out");
+            } catch (ExecutionException expected) {
+                assertThat(expected.getCause() instanceof TimeoutException, is(true));
+            }
+            assertThat(task.isTimedOut(), is(true));
+            assertThat(task.isAlive(), is(false));
+        }
+    }
+
+    @Test
+    public void shouldShutDownOnlyAnOwnedThreadPool() {
+        ExecutorService owned = Shell.newBoundedThreadPool(2);
+        ExecutorService borrowed = Shell.newBoundedThreadPool(2);
+
+        new Shell(owned, true).close();
+        new Shell(borrowed).close();
+
+        assertThat(owned.isShutdown(), is(true));
+        assertThat(borrowed.isShutdown(), is(false));
+        borrowed.shutdown();
+    }
+
+    @Test
+    public void shouldNotQueueTasksBeyondTheMaximumThreads() throws Exception {
+        ExecutorService pool = Shell.newBoundedThreadPool(1);
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            for (int i = 0; i < 2; i++) {
+                pool.execute(() -> {
+                    started.countDown();
+                    awaitQuietly(release);
+                });
+            }
+
+            assertThat(started.await(10, TimeUnit.SECONDS), is(true));
+        } finally {
+            release.countDown();
+            pool.shutdown();
+        }
+    }
+
+    private static String testClasses() throws Exception {
+        return new File(ShellTest.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getAbsolutePath();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static class Sleep {
+        public static void main(String[] args) throws InterruptedException {
+            Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package io.meterian;
+
+import com.meterian.common.io.Sha256;
+import io.meterian.bitbucket.pipelines.BitbucketConfiguration;
+import io.meterian.test_management.MeterianStandInServer;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ClientDownloaderTest {
+
+    private static final String JAVA = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MeterianStandInServer meterian;
+    private CloseableHttpClient httpClient;
+    private Map<String, String> environment;
+    private byte[] jar;
+    private RunSummary summary = new RunSummary();
+    private List<ClientDownloader> downloaders = new ArrayList<>();
+
+    @Before
+    public void setup() throws Exception {
+        jar = new byte[512 * 1024];
+        new Random(42).nextBytes(jar);
+        meterian = new MeterianStandInServer().withJar(jar);
+
+        environment = new HashMap<>();
+        environment.put("METERIAN_CLIENT_CACHE_FOLDER", folder.getRoot().getAbsolutePath());
+        environment.put("METERIAN_CLIENT_CACHE_TTL", "0");
+        httpClient = new HttpClientFactory().newHttpClient(configuration());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        downloaders.forEach(ClientDownloader::close);
+        httpClient.close();
+        meterian.close();
+    }
+
+    @Test
+    public void shouldDownloadTheClientWhenNotCached() throws Exception {
+        File clientJar = newDownloader().load();
+
+        assertArrayEquals(jar, Files.readAllBytes(clientJar.toPath()));
+        assertThat(meterian.getRequestCount(), is(1));
+        assertThat(meterian.getBytesServed(), is((long) jar.length));
+        assertThat(summary.getClientCache(), is(RunSummary.CACHE_MISS));
+        assertThat(summary.getBytesDownloaded(), is((long) jar.length));
+    }
+
+    @Test
+    public void shouldRevalidateTheCachedClientWithItsEtag() throws Exception {
+        newDownloader().load();
+        File clientJar = newDownloader().load();
+
+        assertArrayEquals(jar, Files.readAllBytes(clientJar.toPath()));
+        assertThat(meterian.getNotModifiedCount(), is(1));
+        assertThat(meterian.getBytesServed(), is((long) jar.length));
+        assertThat(summary.getClientCache(), is(RunSummary.CACHE_REVALIDATED));
+    }
+
+    @Test
+    public void shouldNotCheckForUpdatesWithinTheTtl() throws Exception {
+        environment.put("METERIAN_CLIENT_CACHE_TTL", "3600");
+
+        newDownloader().load();
+        newDownloader().load();
+
+        assertThat(meterian.getRequestCount(), is(1));
+        assertThat(summary.getClientCache(), is(RunSummary.CACHE_HIT));
+    }
+
+    @Test
+    public void shouldNotContactTheServerWhenOffline() throws Exception {
+        newDownloader().load();
+        environment.put("METERIAN_CLIENT_OFFLINE", "true");
+
+        File clientJar = newDownloader().load();
+
+        assertArrayEquals(jar, Files.readAllBytes(clientJar.toPath()));
+        assertThat(meterian.getRequestCount(), is(1));
+        assertThat(summary.getClientCache(), is(RunSummary.CACHE_HIT));
+    }
+
+    @Test
+    public void shouldUseTheCachedClientWhenTheServerIsUnreachable() throws Exception {
+        newDownloader().load();
+        meterian.close();
+
+        File clientJar = newDownloader().load();
+
+        assertArrayEquals(jar, Files.readAllBytes(clientJar.toPath()));
+        assertThat(summary.getClientCache(), is(RunSummary.CACHE_STALE));
+    }
+
+    @Test
+    public void shouldFailWhenTheServerIsUnreachableAndNoClientIsCached() throws Exception {
+        meterian.close();
+
+        try {
+            newDownloader().load();
+            fail("No client should be available");
+        } catch (IOException expected) {
+            assertThat(clientJars().isEmpty(), is(true));
+        }
+    }
+
+    @Test
+    public void shouldDownloadTheNewClientWhenChanged() throws Exception {
+        newDownloader().load();
+        byte[] newJar = new byte[1024];
+        meterian.withJar(newJar);
+
+        File clientJar = newDownloader().load();
+
+        assertArrayEquals(newJar, Files.readAllBytes(clientJar.toPath()));
+    }
+
+    @Test
+    public void shouldResumeAnInterruptedDownload() throws Exception {
+        meterian.truncatingNextDownloadAfter(100 * 1024);
+
+        File clientJar = newDownloader().load();
+
+        assertArrayEquals(jar, Files.readAllBytes(clientJar.toPath()));
+        assertThat(meterian.getPartialCount(), is(1));
+        assertThat(meterian.getBytesServed(), is((long) jar.length));
+        assertThat(summary.getBytesDownloaded(), is((long) jar.length));
+    }
+
+    @Test
+    public void shouldRefuseAClientNotMatchingItsChecksum() throws Exception {
+        meterian.withChecksum(Sha256.of("something else"));
+
+        try {
+            newDownloader().load();
+            fail("A corrupted client should not be installed");
+        } catch (IOException expected) {
+            assertThat(expected.getMessage(), containsString("corrupted"));
+        }
+
+        assertThat(clientJars().isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldRefuseAClientWithoutChecksumWhenRequired() throws Exception {
+        meterian.withoutChecksum();
+        environment.put("METERIAN_CLIENT_REQUIRE_CHECKSUM", "true");
+
+        try {
+            newDownloader().load();
+            fail("An unverified client should not be installed");
+        } catch (IOException expected) {
+            assertThat(expected.getMessage(), containsString("No SHA-256"));
+        }
+
+        assertThat(clientJars().isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldAcceptAClientMatchingThePinnedChecksum() throws Exception {
+        meterian.withoutChecksum();
+        environment.put("METERIAN_CLIENT_REQUIRE_CHECKSUM", "true");
+        environment.put("METERIAN_CLIENT_SHA256", Sha256.toHex(Sha256.newDigest().digest(jar)));
+
+        File clientJar = newDownloader().load();
+
+        assertArrayEquals(jar, Files.readAllBytes(clientJar.toPath()));
+    }
+
+    @Test
+    public void shouldEvictTheLeastRecentlyUsedClientWhenTheCacheIsFull() throws Exception {
+        environment.put("METERIAN_CLIENT_CACHE_SIZE_MB", "1");
+        File oldJar;
+        try (ClientDownloader downloader = newDownloader()) {
+            oldJar = downloader.load();
+        }
+
+        byte[] newJar = new byte[700 * 1024];
+        meterian.withJar(newJar);
+        File clientJar = newDownloader().load();
+
+        assertThat(oldJar.exists(), is(false));
+        assertArrayEquals(newJar, Files.readAllBytes(clientJar.toPath()));
+        assertThat(clientJars().size(), is(1));
+    }
+
+    @Test
+    public void shouldNotEvictAClientInUse() throws Exception {
+        environment.put("METERIAN_CLIENT_CACHE_SIZE_MB", "1");
+        File oldJar = newDownloader().load();
+
+        meterian.withJar(new byte[700 * 1024]);
+        newDownloader().load();
+
+        assertArrayEquals(jar, Files.readAllBytes(oldJar.toPath()));
+        assertThat(clientJars().size(), is(2));
+    }
+
+    @Test
+    public void shouldDeleteTheLegacyClient() throws Exception {
+        File legacyJar = folder.newFile(ClientDownloader.JAR_FILENAME);
+        File legacyEtag = folder.newFile(ClientDownloader.JAR_FILENAME + ".etag");
+        legacyJar.setLastModified(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(2));
+
+        newDownloader().load();
+
+        assertThat(legacyJar.exists(), is(false));
+        assertThat(legacyEtag.exists(), is(false));
+    }
+
+    @Test
+    public void shouldDownloadOnceWhenLoadedConcurrently() throws Exception {
+        environment.put("METERIAN_CLIENT_CACHE_TTL", "3600");
+        meterian.withThroughput(1024 * 1024);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<File>> loads = new ArrayList<>();
+            for (int i = 0; i < 4; i++)
+                loads.add(executor.submit(() -> newDownloader().load()));
+            for (Future<File> load : loads)
+                assertArrayEquals(jar, Files.readAllBytes(load.get(30, TimeUnit.SECONDS).toPath()));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(meterian.getRequestCount(), is(1));
+        assertThat(clientJars().size(), is(1));
+    }
+
+    @Test
+    public void shouldWaitForAnotherProcessUpdatingTheCache() throws Exception {
+        try (ClientDownloader downloader = newDownloader()) {
+            downloader.load();
+        }
+        Path lockFile = lockFiles(ClientDownloader.CHANNELS_FOLDER_NAME).get(0);
+
+        Process locker = new ProcessBuilder(JAVA, "-cp", testClasses(), LockHolder.class.getName(), lockFile.toString(), "1000")
+                .redirectErrorStream(true)
+                .start();
+        try {
+            BufferedReader output = new BufferedReader(new InputStreamReader(locker.getInputStream(), UTF_8));
+            assertThat(output.readLine(), is(LockHolder.LOCKED));
+
+            ByteArrayOutputStream console = new ByteArrayOutputStream();
+            long started = System.nanoTime();
+            File clientJar = newDownloader(console).load();
+
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) >= 500, is(true));
+            assertThat(console.toString("UTF-8"), containsString("Waiting for another build"));
+            assertArrayEquals(jar, Files.readAllBytes(clientJar.toPath()));
+        } finally {
+            locker.destroyForcibly();
+        }
+    }
+
+    private List<Path> lockFiles(String folderName) throws IOException {
+        try (Stream<Path> files = Files.walk(new File(folder.getRoot(), folderName).toPath())) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".lock")).collect(Collectors.toList());
+        }
+    }
+
+    private static String testClasses() throws Exception {
+        return new File(ClientDownloaderTest.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getAbsolutePath();
+    }
+
+    private List<Path> clientJars() throws IOException {
+        try (Stream<Path> files = Files.walk(folder.getRoot().toPath())) {
+            return files.filter(file -> file.getFileName().toString().equals(ClientDownloader.JAR_FILENAME)).collect(Collectors.toList());
+        }
+    }
+
+    private ClientDownloader newDownloader() {
+        return newDownloader(new ByteArrayOutputStream());
+    }
+
+    private synchronized ClientDownloader newDownloader(ByteArrayOutputStream console) {
+        ClientDownloader downloader = new ClientDownloader(httpClient, configuration(), new MeterianConsole(new PrintStream(console)), summary);
+        downloaders.add(downloader);
+        return downloader;
+    }
+
+    private BitbucketConfiguration configuration() {
+        return new BitbucketConfiguration(meterian.getBaseUrl(), null, null, null, null, null, null)
+                .withEnvironment(environment);
+    }
+
+    /**
+     * Holds the lock of the cache, as another build would while updating the client.
+     */
+    public static class LockHolder {
+        static final String LOCKED = "locked";
+
+        public static void main(String[] args) throws Exception {
+            try (FileChannel channel = FileChannel.open(Paths.get(args[0]), StandardOpenOption.WRITE);
+                 FileLock lock = channel.lock()) {
+                System.out.println(LOCKED);
+                System.out.flush();
+                Thread.sleep(Long.parseLong(args[1]));
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package io.meterian;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class MeterianConsoleTest {
+
+    private static final String NEWLINE = System.lineSeparator();
+
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private final MeterianConsole console = new MeterianConsole(new PrintStream(output));
+
+    @Test
+    public void shouldWriteMessagesInOrderOnFlush() throws Exception {
+        console.print("[meterian] ");
+        console.println("first");
+        console.println("second");
+
+        console.flush();
+
+        assertThat(output.toString("UTF-8"), is("[meterian] first" + NEWLINE + "second" + NEWLINE));
+    }
+
+    @Test
+    public void shouldNotLoseMessagesFromConcurrentWritersOnClose() throws Exception {
+        final int linesPerWriter = 20_000;
+        List<Thread> writers = new ArrayList<>();
+        for (String type : new String[]{"STDOUT", "STDERR"}) {
+            Thread writer = new Thread(() -> {
+                for (int i = 0; i < linesPerWriter; i++)
+                    console.println(type + " " + i);
+            });
+            writer.start();
+            writers.add(writer);
+        }
+        for (Thread writer : writers)
+            writer.join();
+
+        console.close();
+
+        String[] lines = output.toString("UTF-8").split(NEWLINE);
+        assertThat(lines.length, is(2 * linesPerWriter));
+        int stdout = 0;
+        for (String line : lines) {
+            if (line.startsWith("STDOUT"))
+                assertThat(line, is("STDOUT " + stdout++));
+        }
+        assertThat(stdout, is(linesPerWriter));
+    }
+}
@@ -0,0 +1,59 @@
+package io.meterian;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class MetricsTest {
+
+    private final Metrics metrics = new Metrics();
+
+    @Test
+    public void shouldExportCountersWithLabels() throws Exception {
+        metrics.counter("meterian_test_total", "Test counter", "status", "200").inc();
+        metrics.counter("meterian_test_total", "Test counter", "status", "200").inc(2);
+        metrics.counter("meterian_test_total", "Test counter", "status", "5\"03").inc();
+
+        String text = export();
+
+        assertThat(text, containsString("# HELP meterian_test_total Test counter\n# TYPE meterian_test_total counter\n"));
+        assertThat(text, containsString("meterian_test_total{status=\"200\"} 3\n"));
+        assertThat(text, containsString("meterian_test_total{status=\"5\\\"03\"} 1\n"));
+    }
+
+    @Test
+    public void shouldExportCumulativeHistogramBuckets() throws Exception {
+        Metrics.Histogram histogram = metrics.histogram("meterian_test_seconds", "Test histogram", new double[]{0.1, 1});
+        histogram.observe(0.05);
+        histogram.observe(0.5);
+        histogram.observe(5);
+
+        String text = export();
+
+        assertThat(text, containsString("meterian_test_seconds_bucket{le=\"0.1\"} 1\n"));
+        assertThat(text, containsString("meterian_test_seconds_bucket{le=\"1\"} 2\n"));
+        assertThat(text, containsString("meterian_test_seconds_bucket{le=\"+Inf\"} 3\n"));
+        assertThat(text, containsString("meterian_test_seconds_sum 5.55\n"));
+        assertThat(text, containsString("meterian_test_seconds_count 3\n"));
+    }
+
+    @Test
+    public void shouldObserveTheTimeElapsedWhenTheTimerCloses() {
+        Metrics.Histogram timer = metrics.timer("meterian_test_seconds", "Test timer", "phase", "analysis");
+        try (Metrics.Timer ignored = timer.start()) {
+            assertThat(timer.getCount(), is(0L));
+        }
+
+        assertThat(timer.getCount(), is(1L));
+    }
+
+    private String export() throws Exception {
+        StringWriter out = new StringWriter();
+        metrics.writeTo(out);
+        return out.toString();
+    }
+}
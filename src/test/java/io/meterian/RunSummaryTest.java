@@ -0,0 +1,47 @@
+package io.meterian;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class RunSummaryTest {
+
+    private final RunSummary summary = new RunSummary();
+
+    @Test
+    public void shouldObserveEachPhaseOnceWithItsTotalTime() {
+        long started = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(300);
+        summary.recordPhase(RunSummary.GIT, started);
+        summary.recordPhase(RunSummary.GIT, started);
+        summary.recordPhase(RunSummary.GIT, started);
+
+        summary.recordExit(0);
+
+        Metrics.Histogram git = summary.getMetrics().timer("meterian_phase_seconds", "", "phase", RunSummary.GIT);
+        assertThat(git.getCount(), is(1L));
+        assertThat(git.getSum() >= 0.9, is(true));
+    }
+
+    @Test
+    public void shouldCountTheRunWhateverItsExitCode() throws Exception {
+        summary.recordExit(-1);
+
+        StringWriter text = new StringWriter();
+        summary.getMetrics().writeTo(text);
+        assertThat(text.toString(), containsString("meterian_runs_total{exit_code=\"-1\"} 1\n"));
+        assertThat(summary.toJson(), containsString("\"exit_code\": -1"));
+    }
+
+    @Test
+    public void shouldNotShareMetricsBetweenRuns() {
+        summary.recordExit(0);
+
+        RunSummary next = new RunSummary();
+        assertThat(next.getMetrics().counter("meterian_runs_total", "", "exit_code", "0").get(), is(0.0));
+    }
+}
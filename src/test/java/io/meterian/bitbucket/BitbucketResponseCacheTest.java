@@ -0,0 +1,102 @@
+package io.meterian.bitbucket;
+
+import io.meterian.bitbucket.pipelines.BitbucketConfiguration;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class BitbucketResponseCacheTest {
+
+    private static final String URL = "https://api.bitbucket.org/2.0/repositories/meterian-bot/repo/pullrequests";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldStoreTheBodyWithItsEtag() throws Exception {
+        BitbucketResponseCache cache = newCache("16", "60");
+        String key = cache.key(URL, "meterian-bot", "app-password");
+
+        cache.store(key, "\"abc\"", body("{'values': []}"));
+
+        assertThat(cache.etag(key), is("\"abc\""));
+        try (InputStream in = cache.open(key)) {
+            assertThat(IOUtils.toString(in, UTF_8), is("{'values': []}"));
+        }
+    }
+
+    @Test
+    public void shouldKeepEntriesApartByCredentials() throws Exception {
+        BitbucketResponseCache cache = newCache("16", "60");
+
+        cache.store(cache.key(URL, "meterian-bot", "app-password"), "\"abc\"", body("{}"));
+
+        assertThat(cache.etag(cache.key(URL, "meterian-bot", "another-password")), is(nullValue()));
+    }
+
+    @Test
+    public void shouldExpireEntriesOlderThanTheMaximumAge() throws Exception {
+        BitbucketResponseCache cache = newCache("16", "60");
+        String key = cache.key(URL, "meterian-bot", "app-password");
+        cache.store(key, "\"abc\"", body("{}"));
+
+        entry(key).setLastModified(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(2));
+
+        assertThat(cache.etag(key), is(nullValue()));
+        assertThat(entry(key).exists(), is(false));
+    }
+
+    @Test
+    public void shouldEvictTheOldestEntriesWhenOverSize() throws Exception {
+        BitbucketResponseCache cache = newCache("1", "60");
+        String oldest = cache.key(URL + "?page=1", "meterian-bot", "app-password");
+        String newest = cache.key(URL + "?page=2", "meterian-bot", "app-password");
+
+        cache.store(oldest, "\"abc\"", new ByteArrayInputStream(new byte[600 * 1024]));
+        entry(oldest).setLastModified(System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(10));
+        cache.store(newest, "\"def\"", new ByteArrayInputStream(new byte[600 * 1024]));
+
+        assertThat(cache.etag(oldest), is(nullValue()));
+        assertThat(cache.etag(newest), is("\"def\""));
+    }
+
+    @Test
+    public void shouldBeDisabledWithNoSize() throws Exception {
+        BitbucketResponseCache cache = newCache("0", "60");
+        String key = cache.key(URL, "meterian-bot", "app-password");
+        cache.store(key, "\"abc\"", body("{}"));
+
+        assertThat(cache.isEnabled(), is(false));
+        assertThat(cache.etag(key), is(nullValue()));
+    }
+
+    private BitbucketResponseCache newCache(String sizeInMegabytes, String maxAgeInSeconds) {
+        Map<String, String> environment = new HashMap<>();
+        environment.put("METERIAN_BITBUCKET_CACHE_FOLDER", folder.getRoot().getAbsolutePath());
+        environment.put("METERIAN_BITBUCKET_CACHE_SIZE_MB", sizeInMegabytes);
+        environment.put("METERIAN_BITBUCKET_CACHE_MAX_AGE", maxAgeInSeconds);
+        return new BitbucketResponseCache(new BitbucketConfiguration(null, null, null, null, null, null, null)
+                .withEnvironment(environment));
+    }
+
+    private File entry(String key) {
+        return new File(folder.getRoot(), key + ".entry");
+    }
+
+    private static InputStream body(String text) {
+        return new ByteArrayInputStream(text.getBytes(UTF_8));
+    }
+}
@@ -0,0 +1,93 @@
+package io.meterian.bitbucket;
+
+import io.meterian.bitbucket.BitbucketResponseParser.PullRequest;
+import io.meterian.bitbucket.BitbucketResponseParser.PullRequestsPage;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Optional;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class BitbucketResponseParserTest {
+
+    private final BitbucketResponseParser parser = new BitbucketResponseParser();
+
+    @Test
+    public void shouldParsePullRequestsWithNumericAndStringIds() throws Exception {
+        PullRequestsPage page = parser.parsePullRequests(json("{'values': [" +
+                "{'id': 42, 'source': {'branch': {'name': 'fixed-by-meterian-1'}}, 'created_on': '2019-03-05T10:15:30.123456+00:00'}," +
+                "{'id': '43', 'source': {'branch': {'name': 'fixed-by-meterian-2'}}, 'created_on': '2019-03-06T10:15:30+00:00'}" +
+                "]}"));
+
+        assertThat(page.values.size(), is(2));
+        assertThat(page.values.get(0).id, is("42"));
+        assertThat(page.values.get(0).branchName, is("fixed-by-meterian-1"));
+        assertThat(page.values.get(1).id, is("43"));
+        assertThat(page.values.get(1).branchName, is("fixed-by-meterian-2"));
+        assertThat(page.next, is(nullValue()));
+    }
+
+    @Test
+    public void shouldReturnTheNextPage() throws Exception {
+        PullRequestsPage page = parser.parsePullRequests(json("{'pagelen': 10, 'values': [], " +
+                "'next': 'https://api.bitbucket.org/2.0/repositories/meterian-bot/repo/pullrequests?page=2'}"));
+
+        assertThat(page.values.isEmpty(), is(true));
+        assertThat(page.next, is("https://api.bitbucket.org/2.0/repositories/meterian-bot/repo/pullrequests?page=2"));
+    }
+
+    @Test
+    public void shouldTolerateNullAndMissingFields() throws Exception {
+        PullRequestsPage page = parser.parsePullRequests(json("{'next': null, 'values': [" +
+                "{'id': null, 'source': null, 'created_on': null}," +
+                "{'source': {'branch': {}}}" +
+                "]}"));
+
+        assertThat(page.next, is(nullValue()));
+        for (PullRequest pullRequest : page.values) {
+            assertThat(pullRequest.id, is(nullValue()));
+            assertThat(pullRequest.branchName, is(nullValue()));
+            assertThat(pullRequest.createdOn, is(nullValue()));
+        }
+    }
+
+    @Test
+    public void shouldSkipUnknownNestedObjects() throws Exception {
+        PullRequestsPage page = parser.parsePullRequests(json("{'values': [{" +
+                "'author': {'links': {'avatar': {'href': 'https://bitbucket.org/a.png'}}, 'name': 'not a branch'}," +
+                "'id': 7," +
+                "'source': {'commit': {'hash': 'abc', 'name': 'not a branch'}, 'branch': {'links': [1, [2, {}]], 'name': 'fixed-by-meterian-7'}}," +
+                "'summary': {'raw': 'text', 'markup': ['a', {'b': null}]}" +
+                "}], 'values_count': {'nested': {'deeper': true}}}"));
+
+        assertThat(page.values.size(), is(1));
+        assertThat(page.values.get(0).id, is("7"));
+        assertThat(page.values.get(0).branchName, is("fixed-by-meterian-7"));
+    }
+
+    @Test
+    public void shouldParseTimestampsWithTheirOffset() throws Exception {
+        PullRequestsPage page = parser.parsePullRequests(json("{'values': [{'id': 1, 'created_on': '2019-03-05T10:15:30.5+05:30'}]}"));
+        Optional<OffsetDateTime> branchDate = parser.parseBranchDate(json("{'name': 'master', 'target': {'hash': 'abc', 'date': '2019-03-05T10:15:30-08:00'}}"));
+
+        assertThat(page.values.get(0).createdOn, is(OffsetDateTime.of(2019, 3, 5, 10, 15, 30, 500_000_000, ZoneOffset.ofHoursMinutes(5, 30))));
+        assertThat(branchDate, is(Optional.of(OffsetDateTime.of(2019, 3, 5, 10, 15, 30, 0, ZoneOffset.ofHours(-8)))));
+    }
+
+    @Test
+    public void shouldReturnNoBranchDateWhenMissing() throws Exception {
+        assertThat(parser.parseBranchDate(json("{'name': 'master', 'target': {'hash': 'abc'}}")), is(Optional.empty()));
+        assertThat(parser.parseBranchDate(json("{'name': 'master', 'target': null}")), is(Optional.empty()));
+    }
+
+    private static InputStream json(String text) {
+        return new ByteArrayInputStream(text.replace('\'', '"').getBytes(UTF_8));
+    }
+}
@@ -0,0 +1,158 @@
+package io.meterian.bitbucket;
+
+import io.meterian.HttpClientFactory;
+import io.meterian.MeterianConsole;
+import io.meterian.Metrics;
+import io.meterian.bitbucket.pipelines.BitbucketConfiguration;
+import io.meterian.test_management.BitbucketStandInServer;
+import org.apache.commons.io.FileUtils;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class LocalBitBucketClientTest {
+
+    private static final String USER = "meterian-bot";
+    private static final String REPO = "ClientOfMutabilityDetector";
+    private static final String BRANCH = "fixed-by-meterian-1234567";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private BitbucketStandInServer bitbucket;
+    private CloseableHttpClient httpClient;
+    private LocalBitBucketClient client;
+
+    @Before
+    public void setup() throws Exception {
+        bitbucket = new BitbucketStandInServer();
+
+        Map<String, String> environment = new HashMap<>();
+        environment.put("METERIAN_BITBUCKET_API_URL", bitbucket.getApiUrl());
+        environment.put("METERIAN_CLIENT_CACHE_FOLDER", folder.getRoot().getAbsolutePath());
+        environment.put("METERIAN_HTTP_RETRY_BUDGET_MS", "10000");
+        BitbucketConfiguration configuration = new BitbucketConfiguration(
+                null, null, null, null, USER, null, "app-password")
+                .withEnvironment(environment);
+
+        httpClient = new HttpClientFactory().newHttpClient(configuration);
+        client = new LocalBitBucketClient(
+                httpClient,
+                new BitbucketResponseCache(configuration),
+                configuration.getBitbucketApiUrl(),
+                USER,
+                "app-password",
+                REPO,
+                new MeterianConsole(new PrintStream(new ByteArrayOutputStream())),
+                new Metrics());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        httpClient.close();
+        bitbucket.close();
+    }
+
+    @Test
+    public void shouldCreatePullRequestOnlyOnce() throws Exception {
+        bitbucket.withBranch(BRANCH, hoursAgo(1));
+
+        client.createPullRequest(BRANCH);
+        client.createPullRequest(BRANCH);
+
+        assertThat(bitbucket.getPullRequests().size(), is(1));
+        assertThat(client.getOpenPullRequestIdForBranch(REPO, BRANCH), is("1"));
+    }
+
+    @Test
+    public void shouldFindPullRequestBeyondTheFirstPage() throws Exception {
+        bitbucket.withBranch(BRANCH, hoursAgo(2)).withPageLength(1);
+        bitbucket.withPullRequest(BRANCH, hoursAgo(3));
+        bitbucket.withPullRequest(BRANCH, hoursAgo(1));
+
+        assertThat(client.getOpenPullRequestIdForBranch(REPO, BRANCH), is("2"));
+    }
+
+    @Test
+    public void shouldFindPullRequestWhenTheBranchCannotBeLookedUp() throws Exception {
+        bitbucket.withPullRequest(BRANCH, hoursAgo(1));
+
+        assertThat(client.getOpenPullRequestIdForBranch(REPO, BRANCH), is("1"));
+    }
+
+    @Test
+    public void shouldRetryWhenRateLimited() throws Exception {
+        bitbucket.withBranch(BRANCH, hoursAgo(1)).failingNextRequests(2, 429);
+
+        client.createPullRequest(BRANCH);
+
+        assertThat(bitbucket.getPullRequests().size(), is(1));
+    }
+
+    @Test
+    public void shouldCreatePullRequestWithThreeRoundTrips() throws Exception {
+        final long latency = 50;
+        bitbucket.withBranch(BRANCH, hoursAgo(1)).withLatency(latency);
+
+        long start = System.nanoTime();
+        client.createPullRequest(BRANCH);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // branch lookup, pull requests lookup and creation
+        assertThat(bitbucket.getRequestCount(), is(3));
+        assertTrue("Pull request flow took " + elapsedMillis + " ms", elapsedMillis < 3 * latency + 2_000);
+    }
+
+    @Test
+    public void shouldRevalidateRepeatedLookupsAndParseThemFromTheCache() throws Exception {
+        bitbucket.withBranch(BRANCH, hoursAgo(2));
+        bitbucket.withPullRequest(BRANCH, hoursAgo(1));
+
+        assertThat(client.getOpenPullRequestIdForBranch(REPO, BRANCH), is("1"));
+        assertThat(client.getOpenPullRequestIdForBranch(REPO, BRANCH), is("1"));
+
+        // branch and pull requests lookups, both revalidated the second time
+        assertThat(bitbucket.getRequestCount(), is(4));
+        assertThat(bitbucket.getNotModifiedCount(), is(2));
+    }
+
+    @Test
+    public void shouldFetchAgainWhenTheRevalidatedCopyHasBeenEvicted() throws Exception {
+        bitbucket.withPullRequest(BRANCH, hoursAgo(1));
+        assertThat(client.getOpenPullRequestIdForBranch(REPO, BRANCH), is("1"));
+
+        bitbucket.beforeNextNotModified(() -> {
+            try {
+                FileUtils.cleanDirectory(new File(folder.getRoot(), "bitbucket-cache"));
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+
+        assertThat(client.getOpenPullRequestIdForBranch(REPO, BRANCH), is("1"));
+        assertThat(bitbucket.getNotModifiedCount(), is(1));
+        // two branch lookups, two pull requests lookups and the full GET after the 304
+        assertThat(bitbucket.getRequestCount(), is(5));
+    }
+
+    private OffsetDateTime hoursAgo(int hours) {
+        return OffsetDateTime.now(ZoneOffset.UTC).minusHours(hours);
+    }
+}
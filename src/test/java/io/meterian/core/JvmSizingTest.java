@@ -0,0 +1,101 @@
+package io.meterian.core;
+
+import io.meterian.bitbucket.pipelines.BitbucketConfiguration;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class JvmSizingTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Map<String, String> environment = new HashMap<>();
+
+    @Test
+    public void shouldSizeTheJvmFromCgroupV2Limits() throws Exception {
+        write("cgroup.controllers", "cpu memory");
+        write("memory.max", String.valueOf(4L * 1024 * 1024 * 1024));
+        write("cpu.max", "150000 100000");
+
+        assertThat(sizing().jvmArgs(), is(Arrays.asList(
+                "-XX:+IgnoreUnrecognizedVMOptions", "-XX:MaxRAM=4294967296", "-XX:MaxRAMPercentage=75.0", "-XX:ActiveProcessorCount=2", "-XX:+UseG1GC")));
+    }
+
+    @Test
+    public void shouldBoundTheHeapByTheCgroupV2MemoryLimit() throws Exception {
+        write("cgroup.controllers", "cpu memory");
+        write("memory.max", String.valueOf(512L * 1024 * 1024));
+
+        assertThat(sizing().jvmArgs(), is(Arrays.asList(
+                "-XX:+IgnoreUnrecognizedVMOptions", "-XX:MaxRAM=536870912", "-XX:MaxRAMPercentage=50.0")));
+    }
+
+    @Test
+    public void shouldSizeTheJvmFromCgroupV1Limits() throws Exception {
+        write("memory/memory.limit_in_bytes", String.valueOf(1024L * 1024 * 1024));
+        write("cpu,cpuacct/cpu.cfs_quota_us", "100000");
+        write("cpu,cpuacct/cpu.cfs_period_us", "100000");
+
+        assertThat(sizing().jvmArgs(), is(Arrays.asList(
+                "-XX:+IgnoreUnrecognizedVMOptions", "-XX:MaxRAM=1073741824", "-XX:MaxRAMPercentage=50.0", "-XX:ActiveProcessorCount=1", "-XX:+UseSerialGC")));
+    }
+
+    @Test
+    public void shouldLeaveTheJvmAloneWithoutLimits() throws Exception {
+        write("cgroup.controllers", "cpu memory");
+        write("memory.max", "max");
+        write("cpu.max", "max 100000");
+
+        assertThat(sizing().jvmArgs(), is(Collections.<String>emptyList()));
+    }
+
+    @Test
+    public void shouldPreferTheOverrides() throws Exception {
+        write("cgroup.controllers", "cpu memory");
+        write("memory.max", String.valueOf(4L * 1024 * 1024 * 1024));
+        environment.put("METERIAN_JVM_HEAP_PERCENTAGE", "60");
+        environment.put("METERIAN_JVM_PROCESSORS", "4");
+        environment.put("METERIAN_JVM_GC", "parallel");
+
+        assertThat(sizing().jvmArgs(), is(Arrays.asList(
+                "-XX:+IgnoreUnrecognizedVMOptions", "-XX:MaxRAM=4294967296", "-XX:MaxRAMPercentage=60.0", "-XX:ActiveProcessorCount=4", "-XX:+UseParallelGC")));
+    }
+
+    @Test
+    public void shouldUnlockTheExperimentalCollectors() throws Exception {
+        write("cgroup.controllers", "cpu memory");
+        write("memory.max", "max");
+        environment.put("METERIAN_JVM_GC", "z");
+
+        assertThat(sizing().jvmArgs(), is(Arrays.asList(
+                "-XX:+IgnoreUnrecognizedVMOptions", "-XX:+UnlockExperimentalVMOptions", "-XX:+UseZGC")));
+
+        environment.put("METERIAN_JVM_GC", "shenandoah");
+        assertThat(sizing().jvmArgs(), is(Arrays.asList(
+                "-XX:+IgnoreUnrecognizedVMOptions", "-XX:+UnlockExperimentalVMOptions", "-XX:+UseShenandoahGC")));
+    }
+
+    private JvmSizing sizing() {
+        BitbucketConfiguration configuration = new BitbucketConfiguration(null, null, null, null, null, null, null)
+                .withEnvironment(environment);
+        return new JvmSizing(configuration, folder.getRoot());
+    }
+
+    private void write(String path, String content) throws Exception {
+        File file = new File(folder.getRoot(), path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), (content + "\n").getBytes(StandardCharsets.US_ASCII));
+    }
+}
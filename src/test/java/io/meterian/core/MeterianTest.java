@@ -0,0 +1,149 @@
+package io.meterian.core;
+
+import com.meterian.common.system.Shell;
+import io.meterian.HttpClientFactory;
+import io.meterian.MeterianConsole;
+import io.meterian.RunSummary;
+import io.meterian.bitbucket.pipelines.BitbucketConfiguration;
+import io.meterian.test_management.FakeMeterianClient;
+import io.meterian.test_management.MeterianStandInServer;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+public class MeterianTest {
+
+    private static final UUID PROJECT_UUID = UUID.fromString("a8c3d2f0-0e7e-4c5a-9f1b-3b6b1c2d4e5f");
+    private static final String REPORT_URL = "https://www.meterian.com/projects/?pid=" + PROJECT_UUID + "&branch=master&mode=eli";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MeterianStandInServer meterian;
+    private CloseableHttpClient httpClient;
+    private Map<String, String> environment;
+    private ByteArrayOutputStream output;
+    private MeterianConsole console;
+    private RunSummary summary = new RunSummary();
+
+    @Before
+    public void setup() throws Exception {
+        meterian = new MeterianStandInServer().withJar(FakeMeterianClient.jar());
+
+        environment = new HashMap<>();
+        environment.put("WORKSPACE", folder.newFolder("workspace").getAbsolutePath());
+        environment.put("METERIAN_CLIENT_CACHE_FOLDER", folder.newFolder("cache").getAbsolutePath());
+        output = new ByteArrayOutputStream();
+        console = new MeterianConsole(new PrintStream(output, true, "UTF-8"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        console.close();
+        if (httpClient != null)
+            httpClient.close();
+        meterian.close();
+    }
+
+    @Test
+    public void shouldRunTheClientAndCaptureTheReportUrl() throws Exception {
+        Meterian.Result result = run(
+                "-D" + FakeMeterianClient.LINES + "=50",
+                "-D" + FakeMeterianClient.EXIT_CODE + "=3",
+                "-D" + FakeMeterianClient.REPORT_URL + "=" + REPORT_URL);
+
+        assertThat(result.exitCode, is(3));
+        assertThat(result.projectUUID, is(PROJECT_UUID));
+        assertThat(result.projectBranch, is("master"));
+        assertThat(result.reportUrl.toString(), is(REPORT_URL));
+        assertThat(summary.toJson(), containsString("\"exit_code\": 3"));
+        assertThat(summary.getPhase(RunSummary.ANALYSIS) != null, is(true));
+        console.flush();
+        assertThat(output.toString("UTF-8"), containsString("[meterian] Analysing dependencies of module 50 of 50"));
+    }
+
+    @Test
+    public void shouldRunTheClientWithoutReportUrl() throws Exception {
+        Meterian.Result result = run("-D" + FakeMeterianClient.LINES + "=5");
+
+        assertThat(result.exitCode, is(0));
+        assertThat(result.reportUrl, is((Object) null));
+    }
+
+    @Test
+    public void shouldRedirectTheClientOutputToFileAndStillCaptureTheReportUrl() throws Exception {
+        File outputFile = new File(folder.getRoot(), "client-output.log");
+        environment.put("METERIAN_CLIENT_OUTPUT_MODE", "file");
+        environment.put("METERIAN_CLIENT_OUTPUT_FILE", outputFile.getAbsolutePath());
+
+        Meterian.Result result = run(
+                "-D" + FakeMeterianClient.LINES + "=20",
+                "-D" + FakeMeterianClient.REPORT_URL + "=" + REPORT_URL);
+
+        assertThat(result.projectUUID, is(PROJECT_UUID));
+        assertThat(result.reportUrl.toString(), is(REPORT_URL));
+        assertThat(new String(Files.readAllBytes(outputFile.toPath()), StandardCharsets.UTF_8), containsString("Analysing dependencies of module 20 of 20"));
+        console.flush();
+        assertThat(output.toString("UTF-8"), not(containsString("Analysing dependencies")));
+    }
+
+    @Test
+    public void shouldStopTheClientWhenTheScanTimesOut() throws Exception {
+        environment.put("METERIAN_SCAN_TIMEOUT", "1");
+
+        Meterian.Result result = run(
+                "-D" + FakeMeterianClient.LINES + "=100",
+                "-D" + FakeMeterianClient.LINES_PER_SECOND + "=10");
+
+        assertThat(result.exitCode, is(Shell.Task.TIMED_OUT));
+        console.flush();
+        assertThat(output.toString("UTF-8"), containsString("did not complete within 1 seconds"));
+    }
+
+    @Test
+    public void shouldOverrideOnlyTheVariablesMissingOrDifferentFromTheInheritedOnes() {
+        Map<String, String> inherited = new HashMap<>();
+        inherited.put("PATH", "/usr/bin");
+        inherited.put("WORKSPACE", "/build");
+        Map<String, String> pipeline = new HashMap<>(inherited);
+        pipeline.put("WORKSPACE", ".");
+        pipeline.put("BITBUCKET_BRANCH", "master");
+        pipeline.put("UNSET", null);
+
+        Map<String, String> overrides = Meterian.overrides(pipeline, inherited);
+
+        Map<String, String> expected = new HashMap<>();
+        expected.put("WORKSPACE", ".");
+        expected.put("BITBUCKET_BRANCH", "master");
+        assertThat(overrides, is(expected));
+    }
+
+    private Meterian.Result run(String... jvmArgs) throws Exception {
+        BitbucketConfiguration configuration = new BitbucketConfiguration(
+                meterian.getBaseUrl(), "token", String.join(" ", jvmArgs), null, null, null, null)
+                .withEnvironment(environment);
+        httpClient = new HttpClientFactory().newHttpClient(configuration);
+
+        try (Meterian client = Meterian.build(configuration, environment, console, "", httpClient, summary)) {
+            client.prepare();
+            return client.run();
+        }
+    }
+}
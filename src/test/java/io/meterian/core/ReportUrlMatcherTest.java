@@ -0,0 +1,68 @@
+package io.meterian.core;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class ReportUrlMatcherTest {
+
+    private static final UUID PID = UUID.fromString("a8c3d2f0-0e7e-4c5a-9f1b-3b6b1c2d4e5f");
+
+    private final ReportUrlMatcher matcher = new ReportUrlMatcher();
+    private final Meterian.Result result = new Meterian.Result();
+
+    @Test
+    public void shouldCaptureTheReportUrl() throws Exception {
+        String url = "https://www.meterian.com/projects/?pid=" + PID + "&branch=master&mode=eli";
+
+        assertTrue(matcher.match("Full report available at: " + url + " (open it)", result));
+
+        assertThat(result.projectUUID, is(PID));
+        assertThat(result.projectBranch, is("master"));
+        assertThat(result.reportUrl.toString(), is(url));
+    }
+
+    @Test
+    public void shouldCaptureTheReportUrlFromAReusedBuffer() {
+        StringBuilder line = new StringBuilder("Checking https://www.meterian.com/projects/?pid=not-yet");
+        assertFalse(matcher.match(line, result));
+
+        line.setLength(0);
+        line.append("Full report available at: https://www.meterian.com/projects/?pid=").append(PID).append("&branch=develop");
+        assertTrue(matcher.match(line, result));
+        line.setLength(0);
+
+        assertThat(result.projectUUID, is(PID));
+        assertThat(result.projectBranch, is("develop"));
+        assertThat(result.reportUrl.toString(), is("https://www.meterian.com/projects/?pid=" + PID + "&branch=develop"));
+    }
+
+    @Test
+    public void shouldDecodeTheBranch() {
+        matcher.match("https://www.meterian.io/projects/?branch=feature%2Ffix+it&PID=" + PID, result);
+
+        assertThat(result.projectBranch, is("feature/fix it"));
+        assertThat(result.projectUUID, is(PID));
+    }
+
+    @Test
+    public void shouldIgnoreOtherUrls() {
+        assertFalse(matcher.match("Checking https://repo.maven.apache.org/maven2/?pid=" + PID + "&branch=master", result));
+        assertFalse(matcher.match("Project at https://www.meterian.com/projects/?pid=" + PID, result));
+        assertFalse(matcher.match("Broken https://www.meterian.com/projects/?pid=not-a-uuid&branch=master", result));
+        assertFalse(matcher.isCaptured());
+    }
+
+    @Test
+    public void shouldStopMatchingOnceCaptured() {
+        matcher.match("https://www.meterian.com/projects/?pid=" + PID + "&branch=master", result);
+
+        assertFalse(matcher.match("https://www.meterian.com/projects/?pid=" + UUID.randomUUID() + "&branch=other", result));
+        assertThat(result.projectBranch, is("master"));
+    }
+}
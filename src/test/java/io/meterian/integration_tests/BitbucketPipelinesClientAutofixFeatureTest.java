@@ -59,9 +59,16 @@ public class BitbucketPipelinesClientAutofixFeatureTest {
     }
 
     @After
-    public void tearDown() throws InterruptedException {
-        testManagement.closePullRequestForBranch(bitbucketRepoName, fixedByMeterianBranchName);
-        testManagement.deleteRemoteBranch(repoWorkspace, fixedByMeterianBranchName);
+    public void tearDown() throws Exception {
+        if (testManagement == null)
+            return;
+
+        try {
+            testManagement.closePullRequestForBranch(bitbucketRepoName, fixedByMeterianBranchName);
+            testManagement.deleteRemoteBranch(repoWorkspace, fixedByMeterianBranchName);
+        } finally {
+            testManagement.close();
+        }
     }
 
     @Test
@@ -0,0 +1,281 @@
+package io.meterian.test_management;
+
+import com.google.common.io.CharStreams;
+import com.meterian.common.io.Sha256;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An embedded stand-in for the parts of the Bitbucket REST API used by LocalBitBucketClient:
+ * pull requests listing (with q filter and pagination), creation and decline, and the single branch
+ * endpoint. GET responses carry an ETag and are answered with a 304 when revalidated with it. Latency,
+ * page length and failures can be configured to exercise the client offline.
+ */
+public class BitbucketStandInServer implements AutoCloseable {
+
+    public static class PullRequest {
+        public final int id;
+        public final String branch;
+        public final OffsetDateTime createdOn;
+        public String state = "OPEN";
+
+        PullRequest(int id, String branch, OffsetDateTime createdOn) {
+            this.id = id;
+            this.branch = branch;
+            this.createdOn = createdOn;
+        }
+    }
+
+    private static final Pattern BRANCH_FILTER = Pattern.compile("source\\.branch\\.name=\"((?:[^\"\\\\]|\\\\.)*)\"");
+    private static final Pattern PULL_REQUESTS = Pattern.compile(".*/pullrequests");
+    private static final Pattern DECLINE = Pattern.compile(".*/pullrequests/(\\d+)/decline");
+    private static final Pattern BRANCH = Pattern.compile(".*/refs/branches/([^/]+)");
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final List<PullRequest> pullRequests = new ArrayList<>();
+    private final Map<String, OffsetDateTime> branches = new ConcurrentHashMap<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private final AtomicReference<Runnable> beforeNextNotModified = new AtomicReference<>();
+
+    private volatile long latencyMillis = 0;
+    private volatile int pageLength = -1;
+    private volatile int failureStatus = 503;
+
+    public BitbucketStandInServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String getApiUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/2.0";
+    }
+
+    public BitbucketStandInServer withLatency(long millis) {
+        this.latencyMillis = millis;
+        return this;
+    }
+
+    public BitbucketStandInServer withPageLength(int pageLength) {
+        this.pageLength = pageLength;
+        return this;
+    }
+
+    public BitbucketStandInServer failingNextRequests(int count, int status) {
+        this.failureStatus = status;
+        this.failures.set(count);
+        return this;
+    }
+
+    public BitbucketStandInServer withBranch(String name, OffsetDateTime lastCommitDate) {
+        branches.put(name, lastCommitDate);
+        return this;
+    }
+
+    /**
+     * Runs the given action right before the next 304 is sent, i.e. to evict the copy the client revalidates.
+     */
+    public BitbucketStandInServer beforeNextNotModified(Runnable action) {
+        this.beforeNextNotModified.set(action);
+        return this;
+    }
+
+    public synchronized PullRequest withPullRequest(String branch, OffsetDateTime createdOn) {
+        PullRequest pullRequest = new PullRequest(pullRequests.size() + 1, branch, createdOn);
+        pullRequests.add(pullRequest);
+        return pullRequest;
+    }
+
+    public synchronized List<PullRequest> getPullRequests() {
+        return new ArrayList<>(pullRequests);
+    }
+
+    public int getRequestCount() {
+        return requests.get();
+    }
+
+    public int getNotModifiedCount() {
+        return notModified.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            requests.incrementAndGet();
+            if (latencyMillis > 0)
+                Thread.sleep(latencyMillis);
+
+            if (failures.getAndUpdate(count -> count > 0 ? count - 1 : 0) > 0) {
+                exchange.getResponseHeaders().add("Retry-After", "0");
+                send(exchange, failureStatus, new JSONObject().put("error", "injected failure"));
+                return;
+            }
+
+            URI uri = exchange.getRequestURI();
+            String path = uri.getRawPath();
+            String method = exchange.getRequestMethod();
+            Matcher matcher;
+            if ("GET".equals(method) && PULL_REQUESTS.matcher(path).matches()) {
+                listPullRequests(exchange, uri);
+            } else if ("POST".equals(method) && PULL_REQUESTS.matcher(path).matches()) {
+                createPullRequest(exchange);
+            } else if ("POST".equals(method) && (matcher = DECLINE.matcher(path)).matches()) {
+                declinePullRequest(exchange, Integer.parseInt(matcher.group(1)));
+            } else if ("GET".equals(method) && (matcher = BRANCH.matcher(path)).matches()) {
+                getBranch(exchange, URLDecoder.decode(matcher.group(1), "UTF-8"));
+            } else {
+                send(exchange, 404, new JSONObject().put("error", "unknown endpoint " + path));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void listPullRequests(HttpExchange exchange, URI uri) throws IOException {
+        String query = null;
+        int page = 1;
+        int length = 10;
+        for (NameValuePair param : URLEncodedUtils.parse(uri, StandardCharsets.UTF_8)) {
+            if ("q".equals(param.getName()))
+                query = param.getValue();
+            else if ("page".equals(param.getName()))
+                page = Integer.parseInt(param.getValue());
+            else if ("pagelen".equals(param.getName()))
+                length = Integer.parseInt(param.getValue());
+        }
+        if (pageLength > 0)
+            length = pageLength;
+
+        String branch = null;
+        if (query != null) {
+            Matcher matcher = BRANCH_FILTER.matcher(query);
+            if (matcher.find())
+                branch = matcher.group(1).replace("\\\"", "\"").replace("\\\\", "\\");
+        }
+
+        List<PullRequest> matching = new ArrayList<>();
+        for (PullRequest pullRequest : getPullRequests()) {
+            if ("OPEN".equals(pullRequest.state) && (branch == null || branch.equals(pullRequest.branch)))
+                matching.add(pullRequest);
+        }
+
+        JSONArray values = new JSONArray();
+        int from = (page - 1) * length;
+        for (int index = from; index < Math.min(matching.size(), from + length); index++) {
+            PullRequest pullRequest = matching.get(index);
+            values.put(new JSONObject()
+                    .put("id", pullRequest.id)
+                    .put("state", pullRequest.state)
+                    .put("created_on", pullRequest.createdOn.toString())
+                    .put("source", new JSONObject().put("branch", new JSONObject().put("name", pullRequest.branch))));
+        }
+
+        JSONObject body = new JSONObject()
+                .put("pagelen", length)
+                .put("page", page)
+                .put("size", matching.size())
+                .put("values", values);
+        if (from + length < matching.size()) {
+            String base = "http://" + exchange.getRequestHeaders().getFirst("Host") + uri.getRawPath();
+            String rawQuery = uri.getRawQuery() == null ? "" : uri.getRawQuery().replaceAll("&?page=\\d+", "");
+            body.put("next", base + "?" + rawQuery + (rawQuery.isEmpty() ? "" : "&") + "page=" + (page + 1));
+        }
+
+        send(exchange, 200, body);
+    }
+
+    private void createPullRequest(HttpExchange exchange) throws IOException {
+        JSONObject request = new JSONObject(CharStreams.toString(
+                new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)));
+        String branch = request.getJSONObject("source").getJSONObject("branch").getString("name");
+
+        PullRequest pullRequest = withPullRequest(branch, OffsetDateTime.now(ZoneOffset.UTC));
+        send(exchange, 201, new JSONObject()
+                .put("id", pullRequest.id)
+                .put("title", request.optString("title"))
+                .put("state", pullRequest.state));
+    }
+
+    private void declinePullRequest(HttpExchange exchange, int id) throws IOException {
+        synchronized (this) {
+            for (PullRequest pullRequest : pullRequests) {
+                if (pullRequest.id == id) {
+                    pullRequest.state = "DECLINED";
+                    send(exchange, 200, new JSONObject().put("id", id).put("state", pullRequest.state));
+                    return;
+                }
+            }
+        }
+        send(exchange, 404, new JSONObject().put("error", "no pull request " + id));
+    }
+
+    private void getBranch(HttpExchange exchange, String name) throws IOException {
+        OffsetDateTime date = branches.get(name);
+        if (date == null) {
+            send(exchange, 404, new JSONObject().put("error", "no branch " + name));
+            return;
+        }
+
+        send(exchange, 200, new JSONObject()
+                .put("name", name)
+                .put("target", new JSONObject().put("date", date.toString())));
+    }
+
+    private void send(HttpExchange exchange, int status, JSONObject body) throws IOException {
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        if (status == 200 && "GET".equals(exchange.getRequestMethod())) {
+            String etag = "\"" + Sha256.toHex(Sha256.newDigest().digest(bytes)).substring(0, 16) + "\"";
+            exchange.getResponseHeaders().add("ETag", etag);
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                Runnable action = beforeNextNotModified.getAndSet(null);
+                if (action != null)
+                    action.run();
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+        }
+
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package io.meterian.test_management;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Stands in for the Meterian client jar: prints a configurable number of lines at a configurable rate,
+ * then the report url, and exits with the given code. It is configured with system properties, so that
+ * they can be passed as jvm args, and it is packaged into a runnable jar at test time by {@link #jar()}.
+ *
+ * Only JDK classes can be used here, as this class is the only one in the jar.
+ */
+public class FakeMeterianClient {
+
+    public static final String LINES = "fake.client.lines";
+    public static final String LINES_PER_SECOND = "fake.client.rate";
+    public static final String EXIT_CODE = "fake.client.exit";
+    public static final String REPORT_URL = "fake.client.report";
+
+    public static void main(String[] args) throws Exception {
+        int lines = Integer.getInteger(LINES, 10);
+        int rate = Integer.getInteger(LINES_PER_SECOND, 0);
+        int exitCode = Integer.getInteger(EXIT_CODE, 0);
+        String reportUrl = System.getProperty(REPORT_URL);
+
+        PrintStream out = System.out;
+        long start = System.nanoTime();
+        for (int i = 1; i <= lines; i++) {
+            out.println("Analysing dependencies of module " + i + " of " + lines + " (args: " + args.length + ")");
+            if (rate > 0) {
+                long expectedNanos = i * 1_000_000_000L / rate;
+                long elapsedNanos = System.nanoTime() - start;
+                if (expectedNanos > elapsedNanos)
+                    Thread.sleep((expectedNanos - elapsedNanos) / 1_000_000L);
+            }
+        }
+
+        if (reportUrl != null && !reportUrl.isEmpty())
+            out.println("Full report available at: " + reportUrl);
+
+        out.flush();
+        System.exit(exitCode);
+    }
+
+    public static byte[] jar() throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, FakeMeterianClient.class.getName());
+
+        String entryName = FakeMeterianClient.class.getName().replace('.', '/') + ".class";
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (JarOutputStream jar = new JarOutputStream(bytes, manifest);
+             InputStream in = FakeMeterianClient.class.getClassLoader().getResourceAsStream(entryName)) {
+            if (in == null)
+                throw new IOException("Unable to find " + entryName + " on the classpath");
+
+            jar.putNextEntry(new JarEntry(entryName));
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1)
+                jar.write(buffer, 0, count);
+            jar.closeEntry();
+        }
+
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,210 @@
+package io.meterian.test_management;
+
+import com.meterian.common.io.Sha256;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An embedded stand-in for the Meterian site serving the client jar on its channels (i.e. latest-client-canary).
+ * It honours If-None-Match and Range/If-Range, publishes the SHA-256 of the jar, and can limit its throughput
+ * or drop the connection halfway through a download to exercise the client cache offline.
+ */
+public class MeterianStandInServer implements AutoCloseable {
+
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-");
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private final AtomicInteger partials = new AtomicInteger();
+    private final AtomicLong bytesServed = new AtomicLong();
+    private final AtomicLong truncateNextAfter = new AtomicLong(-1);
+
+    private volatile byte[] jar = new byte[0];
+    private volatile String etag = etagOf(jar);
+    private volatile long bytesPerSecond = 0;
+    private volatile boolean checksumPublished = true;
+    private volatile String checksum = null;
+
+    public MeterianStandInServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String getBaseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    public MeterianStandInServer withJar(byte[] jar) {
+        this.jar = jar;
+        this.etag = etagOf(jar);
+        return this;
+    }
+
+    public MeterianStandInServer withThroughput(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        return this;
+    }
+
+    /**
+     * Publishes the given SHA-256 instead of the one of the jar.
+     */
+    public MeterianStandInServer withChecksum(String checksum) {
+        this.checksum = checksum;
+        this.checksumPublished = true;
+        return this;
+    }
+
+    public MeterianStandInServer withoutChecksum() {
+        this.checksumPublished = false;
+        return this;
+    }
+
+    public MeterianStandInServer truncatingNextDownloadAfter(long bytes) {
+        this.truncateNextAfter.set(bytes);
+        return this;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public int getRequestCount() {
+        return requests.get();
+    }
+
+    public int getNotModifiedCount() {
+        return notModified.get();
+    }
+
+    public int getPartialCount() {
+        return partials.get();
+    }
+
+    public long getBytesServed() {
+        return bytesServed.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            requests.incrementAndGet();
+            byte[] body = jar;
+            String currentEtag = etag;
+
+            if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                sendWithoutBody(exchange, 405);
+                return;
+            }
+
+            exchange.getResponseHeaders().add("ETag", currentEtag);
+            exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+            if (currentEtag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                sendWithoutBody(exchange, 304);
+                return;
+            }
+
+            long from = rangeStart(exchange, currentEtag);
+            if (from >= body.length) {
+                exchange.getResponseHeaders().add("Content-Range", "bytes */" + body.length);
+                sendWithoutBody(exchange, 416);
+                return;
+            }
+
+            exchange.getResponseHeaders().add("Content-Type", "application/java-archive");
+            if (checksumPublished)
+                exchange.getResponseHeaders().add("X-Checksum-Sha256", checksum != null ? checksum : Sha256.toHex(Sha256.newDigest().digest(body)));
+            if (from > 0) {
+                partials.incrementAndGet();
+                exchange.getResponseHeaders().add("Content-Range", "bytes " + from + "-" + (body.length - 1) + "/" + body.length);
+                exchange.sendResponseHeaders(206, body.length - from);
+            } else {
+                exchange.sendResponseHeaders(200, body.length);
+            }
+
+            if (!"HEAD".equals(exchange.getRequestMethod()))
+                send(exchange, body, (int) from, truncateNextAfter.getAndSet(-1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private long rangeStart(HttpExchange exchange, String currentEtag) {
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range == null)
+            return 0;
+
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        if (ifRange != null && !ifRange.equals(currentEtag))
+            return 0;
+
+        Matcher matcher = RANGE.matcher(range.trim());
+        return matcher.matches() ? Long.parseLong(matcher.group(1)) : 0;
+    }
+
+    private void sendWithoutBody(HttpExchange exchange, int status) throws IOException {
+        // the JDK server resets a kept-alive connection after a response without body,
+        // which would be retried by the client and skew the timings
+        exchange.getResponseHeaders().add("Connection", "close");
+        exchange.sendResponseHeaders(status, -1);
+    }
+
+    private void send(HttpExchange exchange, byte[] body, int from, long truncateAfter) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        long sent = 0;
+        OutputStream out = exchange.getResponseBody();
+        for (int offset = from; offset < body.length; offset += CHUNK_SIZE) {
+            int length = Math.min(CHUNK_SIZE, body.length - offset);
+            if (truncateAfter >= 0 && sent + length > truncateAfter) {
+                out.write(body, offset, (int) (truncateAfter - sent));
+                out.flush();
+                bytesServed.addAndGet(truncateAfter - sent);
+                // closing the exchange short of its content length drops the connection
+                throw new IOException("Download truncated after " + truncateAfter + " bytes");
+            }
+
+            out.write(body, offset, length);
+            sent += length;
+            bytesServed.addAndGet(length);
+            throttle(start, sent);
+        }
+        out.close();
+    }
+
+    private void throttle(long start, long sent) throws InterruptedException {
+        if (bytesPerSecond <= 0)
+            return;
+
+        long expectedNanos = sent * 1_000_000_000L / bytesPerSecond;
+        long elapsedNanos = System.nanoTime() - start;
+        if (expectedNanos > elapsedNanos)
+            Thread.sleep((expectedNanos - elapsedNanos) / 1_000_000L);
+    }
+
+    private static String etagOf(byte[] body) {
+        return "\"" + Sha256.toHex(Sha256.newDigest().digest(body)).substring(0, 16) + "\"";
+    }
+}
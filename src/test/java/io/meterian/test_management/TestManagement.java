@@ -6,11 +6,13 @@ import com.meterian.common.system.LineGobbler;
 import com.meterian.common.system.OS;
 import com.meterian.common.system.Shell;
 import io.meterian.*;
+import io.meterian.bitbucket.BitbucketResponseCache;
 import io.meterian.bitbucket.LocalBitBucketClient;
 import io.meterian.bitbucket.pipelines.BitbucketConfiguration;
 import io.meterian.bitbucket.pipelines.BitbucketPipelines;
 import io.meterian.git.LocalGitClient;
 import org.apache.commons.io.FileUtils;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.transport.RefSpec;
@@ -28,7 +30,7 @@ import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 
-public class TestManagement {
+public class TestManagement implements AutoCloseable {
 
     private static final String BASE_URL = "https://www.meterian.com";
     private static final String NO_JVM_ARGS = "";
@@ -41,6 +43,7 @@ public class TestManagement {
     private String meterianBitbucketEmail;
 
     private final BitbucketConfiguration configuration;
+    private final CloseableHttpClient httpClient;
     private final LocalBitBucketClient localBitBucketClient;
 
     private String repoWorkspace;
@@ -64,11 +67,21 @@ public class TestManagement {
         this.log = log;
         this.console = console;
 
+        httpClient = new HttpClientFactory().newHttpClient(configuration);
         localBitBucketClient = new LocalBitBucketClient(
+                httpClient,
+                new BitbucketResponseCache(configuration),
+                configuration.getBitbucketApiUrl(),
                 meterianBitbucketUser,
                 meterianBitbucketAppPassword,
                 repoName,
-                console);
+                console,
+                new Metrics());
+    }
+
+    @Override
+    public void close() throws IOException {
+        httpClient.close();
     }
 
     public void runPipelineCLIClientAndReportAnalysis(MeterianConsole console) {
@@ -157,7 +170,8 @@ public class TestManagement {
                     meterianBitbucketUser,
                     meterianBitbucketAppPassword,
                     meterianBitbucketUser,
-                    console
+                    console,
+                    new Metrics()
             );
 
             gitClient.checkoutBranch(currentBranch);
@@ -198,17 +212,17 @@ public class TestManagement {
             }
 
             Unirest.post(
-                    String.format(
-                            "https://api.bitbucket.org/2.0/repositories/%s/%s/pullrequests/%s/decline",
+                    HttpClientFactory.makeUrl(configuration.getBitbucketApiUrl(), String.format(
+                            "repositories/%s/%s/pullrequests/%s/decline",
                             meterianBitbucketUser,
                             bitbucketRepoName,
                             pullRequestId
-                    )
+                    ))
             ).basicAuth(meterianBitbucketUser, meterianBitbucketAppPassword)
                     .asString();
 
             pollToCheckIfPullRequestIsClosed(bitbucketRepoName, branchName);
-        } catch (UnirestException ex) {
+        } catch (UnirestException | IOException ex) {
             log.error(
                     String.format(
                             "Error trying to close pull request, due to %s (cause: %s)",
@@ -217,7 +231,7 @@ public class TestManagement {
     }
 
     private void pollToCheckIfPullRequestIsClosed(
-            String bitbucketRepoName, String branchName) throws UnirestException, InterruptedException {
+            String bitbucketRepoName, String branchName) throws IOException, InterruptedException {
         int retryCount = 0;
         while (pullRequestIsNotClosed(bitbucketRepoName, branchName)) {
             // Wait for a bit for the changes to reflect across the system
@@ -234,7 +248,7 @@ public class TestManagement {
         log.info(String.format("Pull request for linked branch %s is closed, proceeding forward", branchName));
     }
 
-    private boolean pullRequestIsNotClosed(String bitbucketRepoName, String branchName) throws UnirestException {
+    private boolean pullRequestIsNotClosed(String bitbucketRepoName, String branchName) throws IOException {
         return ! localBitBucketClient
                     .getOpenPullRequestIdForBranch(bitbucketRepoName, branchName).isEmpty();
     }
@@ -283,7 +297,8 @@ public class TestManagement {
                 repoWorkspace,
                 meterianBitbucketUser,
                 meterianBitbucketEmail,
-                meterianBitbucketAppPassword);
+                meterianBitbucketAppPassword)
+                .withEnvironment(environment);
     }
 
     private void assertValidityOf(String variableName, String variableValue) {